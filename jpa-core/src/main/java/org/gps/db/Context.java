@@ -22,41 +22,207 @@
 
 package org.gps.db;
 
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.MappedSuperclass;
+import jakarta.persistence.metamodel.IdentifiableType;
+import jakarta.persistence.metamodel.ManagedType;
+import jakarta.persistence.metamodel.SingularAttribute;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.gps.db.scan.ScanStatistics;
 
 import java.io.Serializable;
 import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Holds the {@link PrimaryKey} fields of the scanned entities.
+ * <p>
+ * A context is either built from a {@link org.gps.db.scan.Scanner} scan, or created lazily from an
+ * {@link EntityManagerFactory}. A lazy context scans nothing up-front: each entity class is registered on first use,
+ * from its {@link PrimaryKey} field or, when there is none, from the id attribute of the JPA metamodel.
+ * <p>
+ * Lookups are keyed by class identity and resolved once per class: subclasses and proxies (e.g. Hibernate proxies)
+ * resolve to the {@link PrimaryKey} of the nearest scanned superclass, and {@link MappedSuperclass}es are inspected
+ * even when they were not part of the scan. The resolved accessors are memoized in a {@link ClassValue}, which makes
+ * lookups allocation-free and safe for concurrent readers.
+ */
 @Data
 public class Context {
 
     private final Map<String, Field> cache;
 
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final Map<String, Field> registered;
+
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final EntityManagerFactory entityManagerFactory;
+
+    /**
+     * Statistics of the scan that produced this context, if any.
+     */
+    @EqualsAndHashCode.Exclude
+    private ScanStatistics statistics;
+
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final ClassValue<Optional<PrimaryKeyAccessor>> accessors = new ClassValue<>() {
+        @Override
+        protected Optional<PrimaryKeyAccessor> computeValue(Class<?> type) {
+            return resolve(type);
+        }
+    };
+
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final ClassValue<AtomicLong> versions = new ClassValue<>() {
+        @Override
+        protected AtomicLong computeValue(Class<?> type) {
+            return new AtomicLong();
+        }
+    };
+
     public Context(final Map<String, Field> cache) {
-        this.cache = cache;
+        this.cache = Collections.unmodifiableMap(new HashMap<>(cache));
+        this.registered = null;
+        this.entityManagerFactory = null;
+    }
+
+    /**
+     * Creates a lazy context that registers entity classes on first use, without any classpath scan.
+     */
+    public Context(final EntityManagerFactory entityManagerFactory) {
+        this.registered = new ConcurrentHashMap<>();
+        this.cache = Collections.unmodifiableMap(registered);
+        this.entityManagerFactory = entityManagerFactory;
     }
 
+    /**
+     * Returns true if entity classes are registered lazily on first use.
+     */
+    public boolean isLazy() {
+        return entityManagerFactory != null;
+    }
+
+    /**
+     * Returns the data version of the entity class, which changes after every committed write made through a
+     * {@link org.gps.db.dao.AbstractDao}. Results read at the same version are still valid.
+     */
+    public long getVersion(Class<?> entityClass) {
+        return versions.get(entityClass).get();
+    }
+
+    /**
+     * Moves the data version of the entity class on, invalidating the results read at earlier versions.
+     */
+    public long bumpVersion(Class<?> entityClass) {
+        return versions.get(entityClass).incrementAndGet();
+    }
+
+    /**
+     * Returns the primary-key value of the entity. The value of a Hibernate proxy is read from its lazy initializer,
+     * without initializing it.
+     */
     @SuppressWarnings("unchecked")
     public <K extends Serializable, T extends Serializable> K getPrimaryKeyValue(T entity) {
-        String className = entity.getClass().getName();
-        if (!cache.containsKey(className)) {
+        PrimaryKeyAccessor accessor = getPrimaryKeyAccessor(entity.getClass());
+        if (accessor == null) {
             return null;
         }
-        Field field = cache.get(className);
-        field.setAccessible(true);
-        try {
-            return (K) field.get(entity);
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
+        if (EntityProxies.isProxy(entity.getClass())) {
+            return (K) EntityProxies.getIdentifier(entity);
         }
+        return (K) accessor.get(entity);
     }
 
     public <T extends Serializable> Field getPrimaryKeyField(Class<T> entityClass) {
-        String className = entityClass.getName();
-        if (!cache.containsKey(className)) {
+        PrimaryKeyAccessor accessor = getPrimaryKeyAccessor(entityClass);
+        return accessor == null ? null : accessor.getField();
+    }
+
+    /**
+     * Returns the {@link PrimaryKeyAccessor} of the entityClass, or null if neither the entityClass nor any of its
+     * superclasses has a known {@link PrimaryKey}.
+     */
+    public PrimaryKeyAccessor getPrimaryKeyAccessor(Class<?> entityClass) {
+        return accessors.get(entityClass).orElse(null);
+    }
+
+    private Optional<PrimaryKeyAccessor> resolve(Class<?> type) {
+        Field field = cache.get(type.getName());
+        if (field == null && (isLazy() || type.isAnnotationPresent(MappedSuperclass.class))) {
+            field = findPrimaryKeyField(type);
+        }
+        if (field != null) {
+            return register(type, field);
+        }
+        Class<?> superclass = type.getSuperclass();
+        if (superclass != null && superclass != Object.class) {
+            Optional<PrimaryKeyAccessor> inherited = accessors.get(superclass);
+            if (inherited.isPresent()) {
+                return inherited;
+            }
+        }
+        if (isLazy()) {
+            field = findIdField(type);
+            if (field != null) {
+                return register(type, field);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private Optional<PrimaryKeyAccessor> register(Class<?> type, Field field) {
+        if (registered != null) {
+            registered.putIfAbsent(type.getName(), field);
+        }
+        return Optional.of(PrimaryKeyAccessor.of(field));
+    }
+
+    /**
+     * Looks up the single id attribute of the type in the JPA metamodel.
+     */
+    private Field findIdField(Class<?> type) {
+        ManagedType<?> managedType;
+        try {
+            managedType = entityManagerFactory.getMetamodel().managedType(type);
+        } catch (IllegalArgumentException e) {
+            // Not a managed type.
             return null;
         }
-        return cache.get(className);
+        if (!(managedType instanceof IdentifiableType)) {
+            return null;
+        }
+        IdentifiableType<?> identifiableType = (IdentifiableType<?>) managedType;
+        if (!identifiableType.hasSingleIdAttribute() || identifiableType.getIdType() == null) {
+            return null;
+        }
+        SingularAttribute<?, ?> id = identifiableType.getId(identifiableType.getIdType().getJavaType());
+        Member member = id.getJavaMember();
+        return member instanceof Field ? (Field) member : null;
+    }
+
+    private static Field findPrimaryKeyField(Class<?> type) {
+        for (Field field : type.getDeclaredFields()) {
+            if (field.isAnnotationPresent(PrimaryKey.class)) {
+                return field;
+            }
+        }
+        return null;
     }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.gps.db;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Optional;
+
+/**
+ * Reads the identifier of Hibernate proxies without a compile-time dependency on Hibernate. The {@link PrimaryKey}
+ * field of a proxy instance is never set, the identifier is held by its {@code LazyInitializer} instead.
+ */
+final class EntityProxies {
+
+    private static final String HIBERNATE_PROXY = "org.hibernate.proxy.HibernateProxy";
+
+    private static final MethodType READER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final ClassValue<Optional<MethodHandle>> IDENTIFIER_READERS = new ClassValue<>() {
+        @Override
+        protected Optional<MethodHandle> computeValue(Class<?> type) {
+            return Optional.ofNullable(identifierReader(type));
+        }
+    };
+
+    private EntityProxies() {
+    }
+
+    static boolean isProxy(Class<?> type) {
+        return IDENTIFIER_READERS.get(type).isPresent();
+    }
+
+    /**
+     * Returns the identifier of the proxy, without initializing it.
+     */
+    static Object getIdentifier(Object proxy) {
+        MethodHandle reader = IDENTIFIER_READERS.get(proxy.getClass())
+                .orElseThrow(() -> new IllegalArgumentException(proxy.getClass() + " is not a proxy"));
+        try {
+            return (Object) reader.invokeExact(proxy);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static MethodHandle identifierReader(Class<?> type) {
+        Class<?> proxyInterface = findInterface(type);
+        if (proxyInterface == null) {
+            return null;
+        }
+        try {
+            Method lazyInitializer = proxyInterface.getMethod("getHibernateLazyInitializer");
+            Method identifier = lazyInitializer.getReturnType().getMethod("getIdentifier");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            return MethodHandles.filterReturnValue(lookup.unreflect(lazyInitializer), lookup.unreflect(identifier))
+                    .asType(READER_TYPE);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException("Unsupported Hibernate proxy " + type, e);
+        }
+    }
+
+    private static Class<?> findInterface(Class<?> type) {
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            for (Class<?> candidate : current.getInterfaces()) {
+                if (HIBERNATE_PROXY.equals(candidate.getName())) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.db;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Accessor for the {@link PrimaryKey} field of an entity class.
+ * <p>
+ * The underlying {@link MethodHandle}s are resolved once when the accessor is created, so reading or writing the
+ * primary-key does not pay for {@link Field#setAccessible(boolean)} and access checks on every call.
+ */
+public final class PrimaryKeyAccessor {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType LONG_GETTER_TYPE = MethodType.methodType(long.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Field field;
+    private final MethodHandle getter;
+    private final MethodHandle longGetter;
+    private final MethodHandle setter;
+
+    private PrimaryKeyAccessor(Field field, MethodHandle getter, MethodHandle longGetter, MethodHandle setter) {
+        this.field = field;
+        this.getter = getter;
+        this.longGetter = longGetter;
+        this.setter = setter;
+    }
+
+    /**
+     * Creates the accessor for the given {@link PrimaryKey} annotated field.
+     */
+    public static PrimaryKeyAccessor of(Field field) {
+        MethodHandles.Lookup lookup = lookupFor(field);
+        try {
+            MethodHandle rawGetter = lookup.unreflectGetter(field);
+            MethodHandle getter = rawGetter.asType(GETTER_TYPE);
+            MethodHandle longGetter = isIntegral(field.getType()) ? rawGetter.asType(LONG_GETTER_TYPE) : null;
+            MethodHandle setter = Modifier.isFinal(field.getModifiers())
+                    ? null
+                    : lookup.unreflectSetter(field).asType(SETTER_TYPE);
+            return new PrimaryKeyAccessor(field, getter, longGetter, setter);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(String.format("Unable to access PrimaryKey field %s", field), e);
+        }
+    }
+
+    private static MethodHandles.Lookup lookupFor(Field field) {
+        try {
+            return MethodHandles.privateLookupIn(field.getDeclaringClass(), MethodHandles.lookup());
+        } catch (IllegalAccessException e) {
+            // Declaring class lives in a module that is not open to us, fall back to plain reflective access.
+            field.setAccessible(true);
+            return MethodHandles.lookup();
+        }
+    }
+
+    private static boolean isIntegral(Class<?> type) {
+        return type == long.class || type == int.class || type == short.class || type == byte.class;
+    }
+
+    /**
+     * Returns the {@link PrimaryKey} field this accessor is bound to.
+     */
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * Returns the type of the primary-key.
+     */
+    public Class<?> getType() {
+        return field.getType();
+    }
+
+    /**
+     * Returns true if the primary-key is an integral primitive and can be read through {@link #getAsLong(Object)}.
+     */
+    public boolean isIntegral() {
+        return longGetter != null;
+    }
+
+    /**
+     * Reads the primary-key value of the entity. Primitive values are boxed.
+     */
+    public Object get(Object entity) {
+        try {
+            return (Object) getter.invokeExact(entity);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Reads an integral primitive primary-key value without boxing.
+     *
+     * @throws UnsupportedOperationException when the primary-key is not an integral primitive.
+     */
+    public long getAsLong(Object entity) {
+        if (longGetter == null) {
+            throw new UnsupportedOperationException(String.format("PrimaryKey field %s is not an integral primitive.",
+                    field));
+        }
+        try {
+            return (long) longGetter.invokeExact(entity);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * Sets the primary-key value of the entity.
+     *
+     * @throws UnsupportedOperationException when the primary-key field is final.
+     */
+    public void set(Object entity, Object value) {
+        if (setter == null) {
+            throw new UnsupportedOperationException(String.format("PrimaryKey field %s is final.", field));
+        }
+        try {
+            setter.invokeExact(entity, value);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PrimaryKeyAccessor(" + field + ")";
+    }
+}
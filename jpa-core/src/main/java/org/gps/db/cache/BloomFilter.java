@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.db.cache;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe Bloom filter over primary-key values.
+ * <p>
+ * Integral keys hash by value, so {@code 5}, {@code 5L} and {@code (short) 5} are the same key.
+ */
+public class BloomFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    private final AtomicLongArray bits;
+
+    private final long bitSize;
+
+    private final int hashFunctions;
+
+    BloomFilter(long bitSize, int hashFunctions) {
+        long words = Math.max(1, (bitSize + 63) / 64);
+        if (words > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bloom filter too large: " + bitSize + " bits");
+        }
+        this.bits = new AtomicLongArray((int) words);
+        this.bitSize = words * 64;
+        this.hashFunctions = hashFunctions;
+    }
+
+    /**
+     * Creates a filter sized for the expected number of keys and false-positive rate, but never larger than
+     * maxBytes. A capped filter has a higher false-positive rate than requested.
+     */
+    public static BloomFilter create(long expectedInsertions, double falsePositiveRate, long maxBytes) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate must be within (0, 1): " + falsePositiveRate);
+        }
+        long n = Math.max(1, expectedInsertions);
+        long bitSize = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (LN2 * LN2));
+        if (maxBytes > 0) {
+            bitSize = Math.min(bitSize, maxBytes * 8);
+        }
+        bitSize = Math.max(64, bitSize);
+        int hashFunctions = (int) Math.max(1, Math.min(16, Math.round((double) bitSize / n * LN2)));
+        return new BloomFilter(bitSize, hashFunctions);
+    }
+
+    /**
+     * Adds the key.
+     */
+    public void put(Object key) {
+        long hash1 = hash(key);
+        long hash2 = mix(hash1 + 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            long index = ((hash1 + i * hash2) & Long.MAX_VALUE) % bitSize;
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    /**
+     * Returns false if the key was definitely never added, true if it may have been.
+     */
+    public boolean mightContain(Object key) {
+        long hash1 = hash(key);
+        long hash2 = mix(hash1 + 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            long index = ((hash1 + i * hash2) & Long.MAX_VALUE) % bitSize;
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Size of the filter in bits.
+     */
+    public long getBitSize() {
+        return bitSize;
+    }
+
+    /**
+     * Number of hash functions.
+     */
+    public int getHashFunctions() {
+        return hashFunctions;
+    }
+
+    static long hash(Object key) {
+        long h;
+        if (key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte) {
+            h = ((Number) key).longValue();
+        } else if (key instanceof CharSequence) {
+            CharSequence chars = (CharSequence) key;
+            h = 1125899906842597L;
+            for (int i = 0; i < chars.length(); i++) {
+                h = 31 * h + chars.charAt(i);
+            }
+        } else if (key instanceof UUID) {
+            UUID uuid = (UUID) key;
+            h = uuid.getMostSignificantBits() ^ mix(uuid.getLeastSignificantBits());
+        } else {
+            h = key.hashCode();
+        }
+        return mix(h);
+    }
+
+    /**
+     * MurmurHash3 64-bit finalizer.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
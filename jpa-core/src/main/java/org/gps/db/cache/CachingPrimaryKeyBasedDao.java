@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.db.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.gps.db.Context;
+import org.gps.db.dao.AbstractPrimaryKeyBasedDao;
+import org.gps.db.dao.CountMode;
+import org.gps.db.dao.EntityChangeListener;
+import org.gps.db.dao.EntityChanges;
+import org.gps.db.dao.KeysetPage;
+import org.gps.db.dao.PartitionedScanConfig;
+import org.gps.db.dao.PredicateBuilder;
+import org.gps.db.dao.PrimaryKeyBasedDao;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * {@link PrimaryKeyBasedDao} caching the entities read by primary key in an {@link EntityCache}, in front of an
+ * {@link AbstractPrimaryKeyBasedDao} bean.
+ * <p>
+ * Cached entries are invalidated once writes made through the Dao commit, so rolled back writes never reach the cache.
+ * Calls within an active transaction bypass the cache, to return the entities managed by its persistence context.
+ * Calls outside of a transaction return detached copies, so that changes made by a caller never reach the cache. Unless
+ * the {@link EntityCache} already copies, see {@link EntityCache#isCopying()}, entities are copied with the given
+ * {@link EntitySerializer}, Java serialization by default. Rows written without going through the Dao are seen once
+ * their entries are evicted or expire.
+ */
+@Slf4j
+public class CachingPrimaryKeyBasedDao<K extends Serializable, T extends Serializable>
+        implements PrimaryKeyBasedDao<K, T>, AutoCloseable {
+
+    private final AbstractPrimaryKeyBasedDao<K, T> dao;
+
+    private final EntityCache<K, T> cache;
+
+    private final EntitySerializer<T> serializer;
+
+    /**
+     * Incremented by every invalidation, so that a read racing with a commit does not cache the state it replaced.
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final EntityChangeListener listener = this::invalidate;
+
+    public CachingPrimaryKeyBasedDao(AbstractPrimaryKeyBasedDao<K, T> dao, EntityCache<K, T> cache) {
+        this(dao, cache, new JavaEntitySerializer<>());
+    }
+
+    /**
+     * @param serializer copies the entities in and out of the cache, unused if the cache copies them itself.
+     */
+    public CachingPrimaryKeyBasedDao(AbstractPrimaryKeyBasedDao<K, T> dao, EntityCache<K, T> cache,
+                                     EntitySerializer<T> serializer) {
+        this.dao = dao;
+        this.cache = cache;
+        this.serializer = serializer;
+        dao.addChangeListener(listener);
+    }
+
+    /**
+     * Stops listening to the writes of the Dao and empties the cache.
+     */
+    @Override
+    public void close() {
+        dao.removeChangeListener(listener);
+        cache.invalidateAll();
+    }
+
+    public EntityCache<K, T> getCache() {
+        return cache;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void invalidate(EntityChanges changes) {
+        invalidations.incrementAndGet();
+        if (changes.isUnknownRowsChanged()) {
+            cache.invalidateAll();
+            return;
+        }
+        for (Object key : changes.getUpdated()) {
+            cache.invalidate((K) key);
+        }
+        for (Object key : changes.getDeleted()) {
+            cache.invalidate((K) key);
+        }
+        for (Object key : changes.getInserted()) {
+            cache.invalidate((K) key);
+        }
+    }
+
+    private boolean bypassCache() {
+        return TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    private T get(K primaryKey) {
+        T cached = cache.get(primaryKey);
+        if (cached == null || cache.isCopying()) {
+            return cached;
+        }
+        try {
+            return copy(cached);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void put(K primaryKey, T entity) {
+        if (cache.isCopying()) {
+            cache.put(primaryKey, entity);
+            return;
+        }
+        try {
+            cache.put(primaryKey, copy(entity));
+        } catch (IOException | RuntimeException e) {
+            log.debug("Not caching {}, unable to copy it.", primaryKey, e);
+        }
+    }
+
+    private T copy(T entity) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        serializer.write(entity, new DataOutputStream(bytes));
+        return serializer.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Override
+    public T findByPrimaryKey(K primaryKey) {
+        if (primaryKey == null || bypassCache()) {
+            return dao.findByPrimaryKey(primaryKey);
+        }
+        T cached = get(primaryKey);
+        if (cached != null) {
+            return cached;
+        }
+        long version = invalidations.get();
+        T entity = dao.findByPrimaryKey(primaryKey);
+        if (entity != null && version == invalidations.get()) {
+            put(primaryKey, entity);
+        }
+        return entity;
+    }
+
+    @Override
+    public List<T> findByPrimaryKeys(Collection<K> primaryKeys) {
+        if (bypassCache()) {
+            return dao.findByPrimaryKeys(primaryKeys);
+        }
+        Map<K, T> found = new HashMap<>();
+        List<K> missing = new ArrayList<>();
+        for (K primaryKey : primaryKeys) {
+            if (primaryKey == null || found.containsKey(primaryKey)) {
+                continue;
+            }
+            T cached = get(primaryKey);
+            if (cached != null) {
+                found.put(primaryKey, cached);
+            } else {
+                missing.add(primaryKey);
+            }
+        }
+        if (!missing.isEmpty()) {
+            long version = invalidations.get();
+            List<T> loaded = dao.findByPrimaryKeys(missing);
+            boolean cacheable = version == invalidations.get();
+            for (int i = 0; i < missing.size(); i++) {
+                T entity = loaded.get(i);
+                if (entity != null) {
+                    found.put(missing.get(i), entity);
+                    if (cacheable) {
+                        put(missing.get(i), entity);
+                    }
+                }
+            }
+        }
+        List<T> result = new ArrayList<>(primaryKeys.size());
+        for (K primaryKey : primaryKeys) {
+            result.add(primaryKey == null ? null : found.get(primaryKey));
+        }
+        return result;
+    }
+
+    @Override
+    public KeysetPage<K, T> findPageAfter(K lastKey, int pageSize) {
+        return dao.findPageAfter(lastKey, pageSize);
+    }
+
+    @Override
+    public long scanPartitioned(PartitionedScanConfig config, Consumer<? super T> consumer) {
+        return dao.scanPartitioned(config, consumer);
+    }
+
+    @Override
+    public int deleteByPrimaryKeys(Collection<K> primaryKeys) {
+        return dao.deleteByPrimaryKeys(primaryKeys);
+    }
+
+    @Override
+    public int deleteWhere(PredicateBuilder<T> predicate) {
+        return dao.deleteWhere(predicate);
+    }
+
+    @Override
+    public void saveOrUpdate(T t) {
+        dao.saveOrUpdate(t);
+    }
+
+    @Override
+    public Context getContext() {
+        return dao.getContext();
+    }
+
+    public Class<T> getEntityClass() {
+        return dao.getEntityClass();
+    }
+
+    @Override
+    public Long countTotal() {
+        return dao.countTotal();
+    }
+
+    @Override
+    public Long countTotal(CountMode mode) {
+        return dao.countTotal(mode);
+    }
+
+    @Override
+    public List<T> findAll() {
+        return dao.findAll();
+    }
+
+    @Override
+    public Stream<T> streamAll(int fetchSize) {
+        return dao.streamAll(fetchSize);
+    }
+
+    @Override
+    public void forEach(int fetchSize, Consumer<? super T> consumer) {
+        dao.forEach(fetchSize, consumer);
+    }
+
+    @Override
+    public <P extends Serializable> Boolean isExists(P value) {
+        return dao.isExists(value);
+    }
+
+    @Override
+    public <P extends Serializable> Set<P> existsAll(Collection<P> values) {
+        return dao.existsAll(values);
+    }
+
+    @Override
+    public void persist(T t) {
+        dao.persist(t);
+    }
+
+    @Override
+    public void persist(Collection<T> tCollection) {
+        dao.persist(tCollection);
+    }
+
+    @Override
+    public void delete(T entity) {
+        dao.delete(entity);
+    }
+}
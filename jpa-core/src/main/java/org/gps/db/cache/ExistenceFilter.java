@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.db.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Probabilistic negative cache of the primary-keys of an entity table, answering "definitely absent" without a
+ * database round trip.
+ * <p>
+ * The filter is built by streaming the primary-key column and afterwards updated with the keys persisted through the
+ * owning DAO. Keys cannot be removed from a Bloom filter: deleted keys keep answering "maybe" until the next rebuild.
+ * Rows inserted without going through the DAO are unknown to the filter until the next rebuild.
+ */
+@Slf4j
+public class ExistenceFilter {
+
+    private final ExistenceFilterConfig config;
+
+    private volatile BloomFilter current;
+
+    private volatile BloomFilter building;
+
+    private volatile long builtAt;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private final LongAdder probes = new LongAdder();
+
+    private final LongAdder definiteMisses = new LongAdder();
+
+    private final LongAdder falsePositives = new LongAdder();
+
+    public ExistenceFilter(ExistenceFilterConfig config) {
+        this.config = config;
+    }
+
+    public ExistenceFilterConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Returns false if the key definitely does not exist. Until the first build completes every key may exist.
+     */
+    public boolean mightContain(Object key) {
+        probes.increment();
+        BloomFilter filter = current;
+        if (filter == null || filter.mightContain(key)) {
+            return true;
+        }
+        definiteMisses.increment();
+        return false;
+    }
+
+    /**
+     * Adds a persisted key, including to a filter being rebuilt.
+     */
+    public void add(Object key) {
+        if (key == null) {
+            return;
+        }
+        BloomFilter filter = current;
+        if (filter != null) {
+            filter.put(key);
+        }
+        BloomFilter next = building;
+        if (next != null) {
+            next.put(key);
+        }
+    }
+
+    /**
+     * Records that a key the filter let through did not exist.
+     */
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    /**
+     * Returns true if the filter was never built, or is older than the rebuild interval, and is not being rebuilt.
+     */
+    public boolean isStale() {
+        if (rebuilding.get()) {
+            return false;
+        }
+        if (current == null) {
+            return true;
+        }
+        return config.getRebuildIntervalMillis() > 0
+                && System.currentTimeMillis() - builtAt > config.getRebuildIntervalMillis();
+    }
+
+    /**
+     * Claims the rebuild of the filter, returns false if another one is in progress. A successful claim must be
+     * followed by {@link #finishRebuild()}.
+     */
+    public boolean tryStartRebuild() {
+        return rebuilding.compareAndSet(false, true);
+    }
+
+    /**
+     * Releases the claim of {@link #tryStartRebuild()}.
+     */
+    public void finishRebuild() {
+        rebuilding.set(false);
+    }
+
+    /**
+     * Builds a new filter from the keys the keySource feeds and swaps it in, within a claim of
+     * {@link #tryStartRebuild()}.
+     *
+     * @param rowCount  current number of rows, used to size the filter.
+     * @param keySource feeds every existing primary-key to the given consumer.
+     */
+    public void rebuild(long rowCount, Consumer<Consumer<Object>> keySource) {
+        if (!rebuilding.get()) {
+            throw new IllegalStateException("The rebuild was not claimed through tryStartRebuild()");
+        }
+        try {
+            long start = System.currentTimeMillis();
+            long expected = (long) Math.max(1024, rowCount * config.getGrowthFactor());
+            BloomFilter next = BloomFilter.create(expected, config.getFalsePositiveRate(), config.getMaxMemoryBytes());
+            building = next;
+            keySource.accept(next::put);
+            current = next;
+            builtAt = System.currentTimeMillis();
+            log.debug("Existence filter built for {} rows in {} ms: {} bits, {} hash functions.",
+                    rowCount, builtAt - start, next.getBitSize(), next.getHashFunctions());
+        } finally {
+            building = null;
+        }
+    }
+
+    /**
+     * Number of keys checked against the filter.
+     */
+    public long getProbeCount() {
+        return probes.sum();
+    }
+
+    /**
+     * Number of checks answered by the filter alone, without a database round trip.
+     */
+    public long getDefiniteMissCount() {
+        return definiteMisses.sum();
+    }
+
+    /**
+     * Number of checks the filter let through that turned out not to exist.
+     */
+    public long getFalsePositiveCount() {
+        return falsePositives.sum();
+    }
+
+    /**
+     * Size of the current filter in bytes, 0 until built.
+     */
+    public long getMemoryBytes() {
+        BloomFilter filter = current;
+        return filter == null ? 0 : filter.getBitSize() / 8;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.db.cache;
+
+import lombok.Data;
+
+/**
+ * Configuration of the {@link ExistenceFilter}.
+ */
+@Data
+public class ExistenceFilterConfig {
+
+    /**
+     * Target false-positive rate, i.e. the share of absent keys that still go to the database.
+     */
+    private double falsePositiveRate = 0.01;
+
+    /**
+     * Upper bound of the filter size in bytes. When reached, the false-positive rate degrades instead.
+     */
+    private long maxMemoryBytes = 16L * 1024 * 1024;
+
+    /**
+     * The filter is sized for the row count at build time multiplied by this factor, leaving room for inserts.
+     */
+    private double growthFactor = 2.0;
+
+    /**
+     * Rebuild the filter from the database once it is older than this, to absorb deletes. 0 disables rebuilds.
+     */
+    private long rebuildIntervalMillis;
+
+    /**
+     * JDBC fetch size used to stream the primary-keys.
+     */
+    private int fetchSize = 1000;
+}
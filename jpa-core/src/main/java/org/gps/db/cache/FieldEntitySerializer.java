@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.db.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link EntitySerializer} writing the fields of an entity class one by one, without the class descriptors and
+ * object graph bookkeeping of Java serialization. Meant for flat entities: primitives are written raw, and common
+ * value types (strings, boxed numbers, UUIDs, big numbers, dates and times, enums, byte arrays) in a compact form.
+ * Fields of other types, such as associations, fall back to Java serialization.
+ * <p>
+ * All non-static, non-transient fields of the class and its superclasses are written. The class needs a no-argument
+ * constructor, which JPA entities have.
+ */
+public class FieldEntitySerializer<V> implements EntitySerializer<V> {
+
+    private final Class<V> type;
+
+    private final Constructor<V> constructor;
+
+    private final Field[] fields;
+
+    public FieldEntitySerializer(Class<V> type) {
+        this.type = type;
+        try {
+            this.constructor = type.getDeclaredConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(String.format("%s has no no-argument constructor.", type), e);
+        }
+        this.constructor.setAccessible(true);
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+        }
+        this.fields = fields.toArray(new Field[0]);
+    }
+
+    @Override
+    public void write(V value, DataOutput out) throws IOException {
+        if (value.getClass() != type) {
+            throw new IllegalArgumentException(String.format("Expected %s, got %s.", type, value.getClass()));
+        }
+        try {
+            for (Field field : fields) {
+                Class<?> fieldType = field.getType();
+                if (fieldType == long.class) {
+                    out.writeLong(field.getLong(value));
+                } else if (fieldType == int.class) {
+                    out.writeInt(field.getInt(value));
+                } else if (fieldType == double.class) {
+                    out.writeDouble(field.getDouble(value));
+                } else if (fieldType == boolean.class) {
+                    out.writeBoolean(field.getBoolean(value));
+                } else if (fieldType == float.class) {
+                    out.writeFloat(field.getFloat(value));
+                } else if (fieldType == short.class) {
+                    out.writeShort(field.getShort(value));
+                } else if (fieldType == byte.class) {
+                    out.writeByte(field.getByte(value));
+                } else if (fieldType == char.class) {
+                    out.writeChar(field.getChar(value));
+                } else {
+                    ValueCodec.write(field.get(value), out);
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public V read(DataInput in) throws IOException {
+        try {
+            V value = constructor.newInstance();
+            for (Field field : fields) {
+                Class<?> fieldType = field.getType();
+                if (fieldType == long.class) {
+                    field.setLong(value, in.readLong());
+                } else if (fieldType == int.class) {
+                    field.setInt(value, in.readInt());
+                } else if (fieldType == double.class) {
+                    field.setDouble(value, in.readDouble());
+                } else if (fieldType == boolean.class) {
+                    field.setBoolean(value, in.readBoolean());
+                } else if (fieldType == float.class) {
+                    field.setFloat(value, in.readFloat());
+                } else if (fieldType == short.class) {
+                    field.setShort(value, in.readShort());
+                } else if (fieldType == byte.class) {
+                    field.setByte(value, in.readByte());
+                } else if (fieldType == char.class) {
+                    field.setChar(value, in.readChar());
+                } else {
+                    field.set(value, ValueCodec.read(in));
+                }
+            }
+            return value;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(String.format("Unable to instantiate %s", type), e);
+        }
+    }
+}
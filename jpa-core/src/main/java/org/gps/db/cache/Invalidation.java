@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.gps.db.cache;
+
+import org.gps.db.dao.EntityChanges;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Primary keys of an entity class written by one committed transaction, published on an {@link InvalidationBus} so
+ * that other nodes evict their cached copies.
+ */
+public final class Invalidation {
+
+    private final String origin;
+
+    private final String entityClassName;
+
+    private final Set<Object> primaryKeys;
+
+    /**
+     * @param origin identifies the publisher, so that it can ignore its own invalidations.
+     * @param primaryKeys keys of the written rows, or null when not known and every row must be invalidated.
+     */
+    public Invalidation(String origin, String entityClassName, Set<?> primaryKeys) {
+        this.origin = origin;
+        this.entityClassName = entityClassName;
+        this.primaryKeys = primaryKeys == null ? null : Collections.unmodifiableSet(new LinkedHashSet<>(primaryKeys));
+    }
+
+    /**
+     * Coalesces the inserted, updated and deleted keys of the changes into one invalidation.
+     */
+    public static Invalidation of(String origin, EntityChanges changes) {
+        if (changes.isUnknownRowsChanged()) {
+            return new Invalidation(origin, changes.getEntityClass().getName(), null);
+        }
+        Set<Object> primaryKeys = new LinkedHashSet<>(changes.getInserted());
+        primaryKeys.addAll(changes.getUpdated());
+        primaryKeys.addAll(changes.getDeleted());
+        return new Invalidation(origin, changes.getEntityClass().getName(), primaryKeys);
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public String getEntityClassName() {
+        return entityClassName;
+    }
+
+    /**
+     * Keys of the written rows, or null when every row of the entity class must be invalidated.
+     */
+    public Set<Object> getPrimaryKeys() {
+        return primaryKeys;
+    }
+
+    public boolean isAll() {
+        return primaryKeys == null;
+    }
+
+    @Override
+    public String toString() {
+        return "Invalidation(" + entityClassName + ", " + (primaryKeys == null ? "all" : primaryKeys.size() + " keys")
+                + ", origin=" + origin + ")";
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.gps.db.cache;
+
+/**
+ * Carries the {@link Invalidation}s of committed writes between nodes, so that each evicts the entries its local
+ * caches hold for rows written elsewhere. Delivery is best effort: caches still need a bound on staleness for rows
+ * whose invalidation was lost.
+ */
+public interface InvalidationBus extends AutoCloseable {
+
+    /**
+     * Publishes the invalidation to the subscribers of every node, including this one.
+     */
+    void publish(Invalidation invalidation);
+
+    void subscribe(InvalidationListener listener);
+
+    void unsubscribe(InvalidationListener listener);
+
+    /**
+     * Declares the primary-key type of an entity class whose invalidations the subscribers of this node receive.
+     * Transports decoding keys from the network only accept the key types declared this way.
+     */
+    default void registerKeyType(Class<?> entityClass, Class<?> keyType) {
+    }
+
+    @Override
+    void close();
+}
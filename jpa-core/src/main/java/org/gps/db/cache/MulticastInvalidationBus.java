@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.gps.db.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link InvalidationBus} over UDP multicast, for nodes of one network segment without a message broker. Invalidations
+ * are delivered to the local subscribers right away and sent to the group in datagrams of at most
+ * {@link #getMaxPacketSize()} bytes, splitting the keys of large transactions across several datagrams.
+ * <p>
+ * Datagrams may be lost or reordered, so caches relying on this bus should still expire their entries.
+ */
+@Slf4j
+public class MulticastInvalidationBus extends LoopbackInvalidationBus {
+
+    private static final int MAGIC = 0x4A50_4931;
+
+    private static final int MAX_DATAGRAM_SIZE = 65_507;
+
+    private static final long MIN_RECEIVE_BACKOFF_MILLIS = 10;
+
+    private static final long MAX_RECEIVE_BACKOFF_MILLIS = 1000;
+
+    private final UUID busId = UUID.randomUUID();
+
+    private final InetSocketAddress group;
+
+    private final NetworkInterface networkInterface;
+
+    private final MulticastSocket socket;
+
+    private final Thread receiver;
+
+    /**
+     * Enum key types accepted from the group, per entity class name, see {@link #registerKeyType(Class, Class)}.
+     */
+    private final ConcurrentMap<String, Set<Class<?>>> enumKeyTypes = new ConcurrentHashMap<>();
+
+    private volatile int maxPacketSize = 1400;
+
+    private volatile boolean closed;
+
+    /**
+     * Joins the group on the default interface, with a time-to-live of 1 keeping datagrams on the local network.
+     */
+    public MulticastInvalidationBus(InetAddress groupAddress, int port) throws IOException {
+        this(groupAddress, port, null, 1);
+    }
+
+    /**
+     * @param networkInterface interface to join the group on, or null for the default one.
+     */
+    public MulticastInvalidationBus(InetAddress groupAddress, int port, NetworkInterface networkInterface,
+                                    int timeToLive) throws IOException {
+        this.group = new InetSocketAddress(groupAddress, port);
+        this.networkInterface = networkInterface;
+        this.socket = new MulticastSocket(port);
+        try {
+            socket.setTimeToLive(timeToLive);
+            if (networkInterface != null) {
+                socket.setNetworkInterface(networkInterface);
+            }
+            socket.joinGroup(group, networkInterface);
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+        this.receiver = new Thread(this::receive, "multicast-invalidation-" + port);
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    public int getMaxPacketSize() {
+        return maxPacketSize;
+    }
+
+    public void setMaxPacketSize(int maxPacketSize) {
+        if (maxPacketSize < 64 || maxPacketSize > MAX_DATAGRAM_SIZE) {
+            throw new IllegalArgumentException("maxPacketSize must be between 64 and " + MAX_DATAGRAM_SIZE);
+        }
+        this.maxPacketSize = maxPacketSize;
+    }
+
+    /**
+     * Accepts the keys of the enum type from the group. Keys of the other types handled by {@link ValueCodec} are
+     * decoded whatever the entity class, and Java serialized keys are never accepted.
+     */
+    @Override
+    public void registerKeyType(Class<?> entityClass, Class<?> keyType) {
+        if (keyType.isEnum()) {
+            enumKeyTypes.put(entityClass.getName(), Set.of(keyType));
+        }
+    }
+
+    @Override
+    public void publish(Invalidation invalidation) {
+        deliver(invalidation);
+        if (closed) {
+            return;
+        }
+        try {
+            for (byte[] packet : encode(invalidation)) {
+                socket.send(new DatagramPacket(packet, packet.length, group));
+            }
+        } catch (IOException e) {
+            log.warn("Unable to send {} to {}", invalidation, group, e);
+        }
+    }
+
+    private List<byte[]> encode(Invalidation invalidation) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(header);
+        out.writeInt(MAGIC);
+        out.writeLong(busId.getMostSignificantBits());
+        out.writeLong(busId.getLeastSignificantBits());
+        out.writeUTF(invalidation.getOrigin());
+        out.writeUTF(invalidation.getEntityClassName());
+        byte[] headerBytes = header.toByteArray();
+
+        List<byte[]> packets = new ArrayList<>();
+        if (invalidation.isAll()) {
+            packets.add(packet(headerBytes, null, 0));
+            return packets;
+        }
+        int limit = maxPacketSize - headerBytes.length - 5;
+        ByteArrayOutputStream keys = new ByteArrayOutputStream();
+        ByteArrayOutputStream key = new ByteArrayOutputStream();
+        DataOutputStream keyOut = new DataOutputStream(key);
+        int count = 0;
+        for (Object primaryKey : invalidation.getPrimaryKeys()) {
+            key.reset();
+            ValueCodec.write(primaryKey, keyOut);
+            if (key.size() > limit || key.toByteArray()[0] == ValueCodec.SERIALIZED) {
+                // Receivers refuse serialized keys, and some keys do not fit in a datagram: invalidate the whole
+                // entity class instead.
+                packets.clear();
+                packets.add(packet(headerBytes, null, 0));
+                return packets;
+            }
+            if (keys.size() + key.size() > limit) {
+                packets.add(packet(headerBytes, keys, count));
+                keys.reset();
+                count = 0;
+            }
+            key.writeTo(keys);
+            count++;
+        }
+        if (count > 0) {
+            packets.add(packet(headerBytes, keys, count));
+        }
+        return packets;
+    }
+
+    private static byte[] packet(byte[] header, ByteArrayOutputStream keys, int count) throws IOException {
+        ByteArrayOutputStream packet = new ByteArrayOutputStream(header.length + 5 + (keys == null ? 0 : keys.size()));
+        packet.write(header);
+        DataOutputStream out = new DataOutputStream(packet);
+        out.writeBoolean(keys == null);
+        out.writeInt(count);
+        if (keys != null) {
+            keys.writeTo(packet);
+        }
+        return packet.toByteArray();
+    }
+
+    private void receive() {
+        byte[] buffer = new byte[MAX_DATAGRAM_SIZE];
+        long backoffMillis = 0;
+        while (!closed) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+            } catch (IOException e) {
+                if (closed) {
+                    return;
+                }
+                // Back off while the socket keeps failing, warning once per run of failures.
+                if (backoffMillis == 0) {
+                    log.warn("Unable to receive invalidations from {}", group, e);
+                } else {
+                    log.debug("Still unable to receive invalidations from {}", group, e);
+                }
+                backoffMillis = Math.min(Math.max(2 * backoffMillis, MIN_RECEIVE_BACKOFF_MILLIS),
+                        MAX_RECEIVE_BACKOFF_MILLIS);
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                continue;
+            }
+            if (backoffMillis != 0) {
+                log.info("Receiving invalidations from {} again", group);
+                backoffMillis = 0;
+            }
+            try {
+                Invalidation invalidation = decode(packet);
+                if (invalidation != null) {
+                    deliver(invalidation);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Ignoring malformed invalidation datagram from {}", packet.getSocketAddress(), e);
+            }
+        }
+    }
+
+    /**
+     * Decodes the datagram, or returns null when it was sent by this bus or is not an invalidation.
+     */
+    private Invalidation decode(DatagramPacket packet) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength()));
+        if (packet.getLength() < 4 || in.readInt() != MAGIC) {
+            return null;
+        }
+        long most = in.readLong();
+        long least = in.readLong();
+        if (most == busId.getMostSignificantBits() && least == busId.getLeastSignificantBits()) {
+            return null;
+        }
+        String origin = in.readUTF();
+        String entityClassName = in.readUTF();
+        boolean all = in.readBoolean();
+        int count = in.readInt();
+        if (all) {
+            return new Invalidation(origin, entityClassName, null);
+        }
+        // Every key takes at least one byte.
+        if (count < 0 || count > in.available()) {
+            throw new IOException("Invalid primary-key count: " + count);
+        }
+        Set<Class<?>> enumTypes = enumKeyTypes.getOrDefault(entityClassName, Set.of());
+        Set<Object> primaryKeys = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++) {
+            primaryKeys.add(ValueCodec.readUntrusted(in, enumTypes));
+        }
+        return new Invalidation(origin, entityClassName, primaryKeys);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            socket.leaveGroup(group, networkInterface);
+        } catch (IOException e) {
+            log.debug("Unable to leave {}", group, e);
+        }
+        socket.close();
+        super.close();
+    }
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.db.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link EntityCache} keeping the entities serialized outside of the Java heap, in direct {@link ByteBuffer} slabs,
+ * so that a large working set does not weigh on the garbage collector. Every read deserializes a new, detached
+ * instance.
+ * <p>
+ * Memory is split into fixed-size slots holding the serialized key and entity. Entities that do not fit in a slot
+ * are not cached, see {@link #getRejectionCount()}. An open-addressing index maps keys to slots, and a full cache
+ * evicts with the clock algorithm, an approximation of LRU. The memory is released once the cache is garbage
+ * collected.
+ */
+@Slf4j
+public class OffHeapEntityCache<K, V> implements EntityCache<K, V> {
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final int MAX_SLAB_SIZE = 256 * 1024 * 1024;
+
+    private final EntitySerializer<V> serializer;
+
+    private final int slotSize;
+
+    private final int slotCount;
+
+    private final int slotsPerSlab;
+
+    private final ByteBuffer[] slabs;
+
+    /**
+     * Open-addressing index with linear probing, of slot + 1, 0 marking an empty position.
+     */
+    private final int[] index;
+
+    private final int[] slotHashes;
+
+    private final byte[] referenced;
+
+    private final int[] freeSlots;
+
+    private int freeCount;
+
+    private int unusedSlot;
+
+    private int size;
+
+    private int hand;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * @param capacityBytes off-heap memory to allocate.
+     * @param slotSize      bytes per entry, the serialized key and entity plus 8 bytes.
+     */
+    public OffHeapEntityCache(long capacityBytes, int slotSize, EntitySerializer<V> serializer) {
+        if (slotSize <= HEADER_SIZE || slotSize > MAX_SLAB_SIZE) {
+            throw new IllegalArgumentException("Invalid slotSize: " + slotSize);
+        }
+        long slots = capacityBytes / slotSize;
+        if (slots < 1 || slots > (1 << 28)) {
+            throw new IllegalArgumentException(String.format("capacityBytes must hold between 1 and 2^28 slots " +
+                    "of %d bytes: %d", slotSize, capacityBytes));
+        }
+        this.serializer = serializer;
+        this.slotSize = slotSize;
+        this.slotCount = (int) slots;
+        this.slotsPerSlab = Math.min(slotCount, MAX_SLAB_SIZE / slotSize);
+        this.slabs = new ByteBuffer[(slotCount + slotsPerSlab - 1) / slotsPerSlab];
+        for (int i = 0; i < slabs.length; i++) {
+            int slabSlots = Math.min(slotsPerSlab, slotCount - i * slotsPerSlab);
+            slabs[i] = ByteBuffer.allocateDirect(slabSlots * slotSize);
+        }
+        this.index = new int[Integer.highestOneBit(Math.max(2, slotCount) - 1) << 2];
+        this.slotHashes = new int[slotCount];
+        this.referenced = new byte[slotCount];
+        this.freeSlots = new int[slotCount];
+    }
+
+    @Override
+    public V get(K key) {
+        byte[] keyBytes = encode(key);
+        int hash = hash(keyBytes);
+        byte[] valueBytes;
+        lock.lock();
+        try {
+            int position = find(keyBytes, hash);
+            if (position < 0) {
+                misses.increment();
+                return null;
+            }
+            int slot = index[position] - 1;
+            referenced[slot] = 1;
+            valueBytes = readValue(slot);
+        } finally {
+            lock.unlock();
+        }
+        hits.increment();
+        try {
+            return serializer.read(new DataInputStream(new ByteArrayInputStream(valueBytes)));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean isCopying() {
+        return true;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        if (value == null) {
+            invalidate(key);
+            return;
+        }
+        byte[] keyBytes = encode(key);
+        byte[] valueBytes;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(slotSize);
+            serializer.write(value, new DataOutputStream(bytes));
+            valueBytes = bytes.toByteArray();
+        } catch (IOException | RuntimeException e) {
+            log.debug("Not caching {}, unable to serialize it.", key, e);
+            rejections.increment();
+            invalidate(key);
+            return;
+        }
+        if (HEADER_SIZE + keyBytes.length + valueBytes.length > slotSize) {
+            rejections.increment();
+            invalidate(key);
+            return;
+        }
+        int hash = hash(keyBytes);
+        lock.lock();
+        try {
+            int position = find(keyBytes, hash);
+            int slot;
+            if (position >= 0) {
+                slot = index[position] - 1;
+            } else {
+                slot = allocateSlot();
+                slotHashes[slot] = hash;
+                insert(slot);
+                size++;
+            }
+            write(slot, keyBytes, valueBytes);
+            referenced[slot] = 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void invalidate(K key) {
+        byte[] keyBytes = encode(key);
+        int hash = hash(keyBytes);
+        lock.lock();
+        try {
+            int position = find(keyBytes, hash);
+            if (position >= 0) {
+                int slot = index[position] - 1;
+                delete(position);
+                referenced[slot] = 0;
+                freeSlots[freeCount++] = slot;
+                size--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            Arrays.fill(index, 0);
+            Arrays.fill(referenced, (byte) 0);
+            freeCount = 0;
+            unusedSlot = 0;
+            size = 0;
+            hand = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Off-heap memory allocated, in bytes.
+     */
+    public long getCapacityBytes() {
+        return (long) slotCount * slotSize;
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Number of entities not cached because they did not fit in a slot, or could not be serialized.
+     */
+    public long getRejectionCount() {
+        return rejections.sum();
+    }
+
+    /**
+     * Takes a free slot, or evicts the first entry not referenced since the clock hand last passed it.
+     */
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (unusedSlot < slotCount) {
+            return unusedSlot++;
+        }
+        while (referenced[hand] != 0) {
+            referenced[hand] = 0;
+            hand = (hand + 1) % slotCount;
+        }
+        int victim = hand;
+        hand = (hand + 1) % slotCount;
+        int position = slotHashes[victim] & (index.length - 1);
+        while (index[position] != victim + 1) {
+            position = (position + 1) & (index.length - 1);
+        }
+        delete(position);
+        size--;
+        evictions.increment();
+        return victim;
+    }
+
+    private int find(byte[] keyBytes, int hash) {
+        int mask = index.length - 1;
+        for (int position = hash & mask; index[position] != 0; position = (position + 1) & mask) {
+            int slot = index[position] - 1;
+            if (slotHashes[slot] == hash && keyEquals(slot, keyBytes)) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(int slot) {
+        int mask = index.length - 1;
+        int position = slotHashes[slot] & mask;
+        while (index[position] != 0) {
+            position = (position + 1) & mask;
+        }
+        index[position] = slot + 1;
+    }
+
+    /**
+     * Removes the index position, shifting back the entries of the same probe sequence instead of leaving a
+     * tombstone.
+     */
+    private void delete(int position) {
+        int mask = index.length - 1;
+        int hole = position;
+        int next = position;
+        while (true) {
+            next = (next + 1) & mask;
+            if (index[next] == 0) {
+                break;
+            }
+            int home = slotHashes[index[next] - 1] & mask;
+            // Move the entry into the hole unless its home lies cyclically within (hole, next].
+            boolean inRange = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+            if (!inRange) {
+                index[hole] = index[next];
+                hole = next;
+            }
+        }
+        index[hole] = 0;
+    }
+
+    private ByteBuffer slab(int slot) {
+        return slabs[slot / slotsPerSlab];
+    }
+
+    private int offset(int slot) {
+        return (slot % slotsPerSlab) * slotSize;
+    }
+
+    private boolean keyEquals(int slot, byte[] keyBytes) {
+        ByteBuffer slab = slab(slot);
+        int offset = offset(slot);
+        if (slab.getInt(offset) != keyBytes.length) {
+            return false;
+        }
+        offset += HEADER_SIZE;
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (slab.get(offset + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] readValue(int slot) {
+        ByteBuffer slab = slab(slot);
+        int offset = offset(slot);
+        byte[] value = new byte[slab.getInt(offset + 4)];
+        slab.position(offset + HEADER_SIZE + slab.getInt(offset));
+        slab.get(value);
+        return value;
+    }
+
+    private void write(int slot, byte[] keyBytes, byte[] valueBytes) {
+        ByteBuffer slab = slab(slot);
+        slab.position(offset(slot));
+        slab.putInt(keyBytes.length);
+        slab.putInt(valueBytes.length);
+        slab.put(keyBytes);
+        slab.put(valueBytes);
+    }
+
+    private static byte[] encode(Object key) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+            ValueCodec.write(key, new DataOutputStream(bytes));
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(String.format("Unable to encode key %s", key), e);
+        }
+    }
+
+    private static int hash(byte[] keyBytes) {
+        int hash = Arrays.hashCode(keyBytes);
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.db.cache;
+
+/**
+ * Two-level {@link EntityCache}: a small, fast first level, typically an on-heap {@link TinyLfuCache}, in front of a
+ * large second level, typically an {@link OffHeapEntityCache}. Entries are written to both levels, and second level
+ * hits are promoted to the first level.
+ */
+public class TieredEntityCache<K, V> implements EntityCache<K, V> {
+
+    private final EntityCache<K, V> first;
+
+    private final EntityCache<K, V> second;
+
+    public TieredEntityCache(EntityCache<K, V> first, EntityCache<K, V> second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    @Override
+    public V get(K key) {
+        V value = first.get(key);
+        if (value == null) {
+            value = second.get(key);
+            if (value != null) {
+                first.put(key, value);
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        second.put(key, value);
+        first.put(key, value);
+    }
+
+    @Override
+    public boolean isCopying() {
+        return first.isCopying() && second.isCopying();
+    }
+
+    @Override
+    public void invalidate(K key) {
+        first.invalidate(key);
+        second.invalidate(key);
+    }
+
+    @Override
+    public void invalidateAll() {
+        first.invalidateAll();
+        second.invalidateAll();
+    }
+
+    /**
+     * Number of entries of the second level, which holds the entries of both.
+     */
+    @Override
+    public long size() {
+        return second.size();
+    }
+
+    @Override
+    public long getHitCount() {
+        return first.getHitCount() + second.getHitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return second.getMissCount();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return second.getEvictionCount();
+    }
+
+    public EntityCache<K, V> getFirst() {
+        return first;
+    }
+
+    public EntityCache<K, V> getSecond() {
+        return second;
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.gps.db.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Size-bounded {@link EntityCache} with TinyLFU admission and optional time-to-live.
+ * <p>
+ * New entries enter a small LRU window. An entry leaving the window is only admitted to the main LRU region if it was
+ * accessed more often recently than the entry it would evict, as estimated by a {@link FrequencySketch}. A burst of
+ * one-off reads thus cannot flush out the frequently read entries.
+ * <p>
+ * Reads do not lock: values are looked up in a {@link ConcurrentHashMap} and the read key is recorded in a bounded
+ * buffer. The buffer is replayed against the recency order and the sketch under the lock, by the next write or by the
+ * read that fills it. When the buffer is full and the lock is busy, reads are not recorded.
+ */
+public class TinyLfuCache<K, V> implements EntityCache<K, V> {
+
+    private static final int READ_BUFFER_SIZE = 128;
+
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = READ_BUFFER_SIZE / 4;
+
+    private final int windowSize;
+
+    private final int mainSize;
+
+    private final long ttlNanos;
+
+    private final ConcurrentHashMap<K, CacheEntry<V>> data = new ConcurrentHashMap<>();
+
+    /**
+     * Recency order of the keys of {@link #data}, guarded by {@link #lock}.
+     */
+    private final LinkedHashMap<K, Boolean> window = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LinkedHashMap<K, Boolean> main = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final FrequencySketch sketch;
+
+    private final Queue<K> readBuffer = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger readBufferSize = new AtomicInteger();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    public TinyLfuCache(int maximumSize) {
+        this(maximumSize, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param ttl time entries are served after they are put, 0 for no expiry.
+     */
+    public TinyLfuCache(int maximumSize, long ttl, TimeUnit unit) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be at least 1: " + maximumSize);
+        }
+        this.windowSize = Math.max(1, maximumSize / 100);
+        this.mainSize = maximumSize - windowSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    @Override
+    public V get(K key) {
+        CacheEntry<V> entry = data.get(key);
+        if (entry != null && entry.isExpired()) {
+            expire(key, entry);
+            entry = null;
+        } else {
+            recordRead(key);
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    private void recordRead(K key) {
+        int pending = readBufferSize.get();
+        if (pending < READ_BUFFER_SIZE && readBufferSize.compareAndSet(pending, pending + 1)) {
+            readBuffer.offer(key);
+            pending++;
+        }
+        if (pending >= READ_BUFFER_DRAIN_THRESHOLD && lock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Replays the buffered reads against the sketch and the recency order. Requires {@link #lock}.
+     */
+    private void drainReadBuffer() {
+        K key;
+        while ((key = readBuffer.poll()) != null) {
+            readBufferSize.decrementAndGet();
+            sketch.increment(key);
+            if (window.get(key) == null) {
+                main.get(key);
+            }
+        }
+    }
+
+    private void expire(K key, CacheEntry<V> entry) {
+        lock.lock();
+        try {
+            if (data.remove(key, entry)) {
+                window.remove(key);
+                main.remove(key);
+                evictions.increment();
+            }
+            sketch.increment(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(K key, V value) {
+        if (value == null) {
+            invalidate(key);
+            return;
+        }
+        long expiresAt = ttlNanos > 0 ? System.nanoTime() + ttlNanos : 0;
+        CacheEntry<V> entry = new CacheEntry<>(value, expiresAt);
+        lock.lock();
+        try {
+            drainReadBuffer();
+            if (data.put(key, entry) != null) {
+                if (window.get(key) == null) {
+                    main.get(key);
+                }
+                return;
+            }
+            window.put(key, Boolean.TRUE);
+            if (window.size() > windowSize) {
+                admit(removeEldest(window));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the key evicted from the window to the main region, if it is more popular than the main region's victim.
+     */
+    private void admit(K candidate) {
+        if (main.size() < mainSize) {
+            main.put(candidate, Boolean.TRUE);
+            return;
+        }
+        evictions.increment();
+        if (mainSize == 0) {
+            data.remove(candidate);
+            return;
+        }
+        K victim = main.keySet().iterator().next();
+        if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+            main.remove(victim);
+            data.remove(victim);
+            main.put(candidate, Boolean.TRUE);
+        } else {
+            data.remove(candidate);
+        }
+    }
+
+    private static <K> K removeEldest(LinkedHashMap<K, ?> map) {
+        Iterator<K> iterator = map.keySet().iterator();
+        K eldest = iterator.next();
+        iterator.remove();
+        return eldest;
+    }
+
+    @Override
+    public void invalidate(K key) {
+        lock.lock();
+        try {
+            data.remove(key);
+            window.remove(key);
+            main.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            data.clear();
+            window.clear();
+            main.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long size() {
+        return data.size();
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private static final class CacheEntry<V> {
+
+        private final V value;
+
+        private final long expiresAt;
+
+        private CacheEntry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return expiresAt != 0 && System.nanoTime() - expiresAt > 0;
+        }
+    }
+}
@@ -23,24 +23,64 @@
 package org.gps.db.dao;
 
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.TypedQuery;
 import jakarta.persistence.criteria.*;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.gps.db.Context;
+import org.gps.db.cache.EntitySerializer;
+import org.gps.db.cache.ExistenceFilter;
+import org.gps.db.cache.ExistenceFilterConfig;
+import org.gps.db.cache.Invalidation;
+import org.gps.db.cache.InvalidationBus;
+import org.gps.db.cache.InvalidationListener;
+import org.gps.db.cache.JavaEntitySerializer;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.ClassUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
 
 /**
  * Abstract implementation of the {@link Dao}.
+ * <p>
+ * The built-in queries are built once per entity class and registered as named queries of the
+ * {@link EntityManagerFactory}, either on first use or eagerly after startup when {@link #isWarmUpQueries()} is set.
  *
  * @param <T>
  */
@@ -48,10 +88,109 @@ import java.util.List;
 @Slf4j
 @Getter
 @Setter
-public abstract class AbstractDao<T extends Serializable> implements Dao<T> {
+public abstract class AbstractDao<T extends Serializable> implements Dao<T>, SmartInitializingSingleton {
+
+    protected static final String FIND_ALL_QUERY = "findAll";
+
+    protected static final String COUNT_QUERY = "countTotal";
+
+    protected static final String EXISTS_QUERY = "isExists";
+
+    protected static final String EXISTS_ALL_QUERY = "existsAll";
+
+    protected static final String PRIMARY_KEY_PARAMETER = "primaryKey";
+
+    protected static final String PRIMARY_KEYS_PARAMETER = "primaryKeys";
+
+    /**
+     * JDBC fetch size query hint (Hibernate). Hints unknown to the provider are ignored.
+     */
+    protected static final String HINT_FETCH_SIZE = "org.hibernate.fetchSize";
+
+    /**
+     * Read-only query hint (Hibernate), skips the dirty-checking snapshots of the loaded entities.
+     */
+    protected static final String HINT_READ_ONLY = "org.hibernate.readOnly";
 
     protected final Context context;
 
+    /**
+     * Registers the built-in named queries right after startup instead of on first use.
+     */
+    private boolean warmUpQueries;
+
+    /**
+     * Maximum number of values bound in a single IN list, larger collections are queried in chunks.
+     */
+    private int inClauseLimit = 500;
+
+    /**
+     * Number of entities {@link #persist(Collection)} writes before flushing and clearing the persistence context.
+     */
+    private int batchSize = 50;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile boolean namedQueriesRegistered;
+
+    /**
+     * Time a {@link CountMode#CACHED} count is served before it is counted again.
+     */
+    private long countCacheTtlMillis = 60000;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final AtomicLong cachedCount = new AtomicLong();
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile long cachedCountExpiresAt;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final List<EntityChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Caches the results of {@link #findAll()} until the next write to the entity class is committed, see
+     * {@link Context#getVersion(Class)}.
+     */
+    private boolean resultCacheEnabled;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final ConcurrentMap<String, CachedResult> resultCache = new ConcurrentHashMap<>();
+
+    /**
+     * Copies the entities in and out of the result cache, Java serialization by default.
+     */
+    private EntitySerializer<T> resultCacheSerializer = new JavaEntitySerializer<>();
+
+    /**
+     * Carries the writes committed through this Dao to the other nodes, and theirs to this Dao. Null unless set.
+     */
+    private volatile InvalidationBus invalidationBus;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final String invalidationOrigin = UUID.randomUUID().toString();
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final InvalidationListener invalidationListener = this::invalidated;
+
+    /**
+     * Negative cache consulted by {@link #isExists} and {@link #existsAll}, null unless enabled.
+     */
+    @Setter(AccessLevel.NONE)
+    private volatile ExistenceFilter existenceFilter;
+
+    /**
+     * Runs the background rebuilds of the {@link #existenceFilter}, null unless enabled.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private ExecutorService existenceFilterExecutor;
+
     public AbstractDao(Context context) {
         this.context = context;
     }
@@ -78,34 +217,620 @@ public abstract class AbstractDao<T extends Serializable> implements Dao<T> {
 	@Override
     @Transactional(readOnly = true)
 	public List<T> findAll() {
-        CriteriaBuilder cb = getEntityManager().getCriteriaBuilder();
-        CriteriaQuery<T> cq = cb.createQuery(getEntityClass());
-        Root<T> rootEntry = cq.from(getEntityClass());
-        CriteriaQuery<T> all = cq.select(rootEntry);
-        TypedQuery<T> allQuery = getEntityManager().createQuery(all);
-        return allQuery.getResultList();
+        return getCachedResultList(FIND_ALL_QUERY, () -> createFindAllQuery().getResultList());
     }
 
-	@Override
+    /**
+     * Returns the cached result of the query if still valid, running and caching it otherwise, when
+     * {@link #isResultCacheEnabled()}. A cached result stays valid until a write to the entity class is committed
+     * through a Dao; writes made by other means are not detected.
+     * <p>
+     * The cache holds the entities serialized by the {@link #getResultCacheSerializer()} and every hit returns new,
+     * detached copies, which the caller may modify. A result read within a transaction is only cached once it commits.
+     * The cache is bypassed within read-write transactions and after writes of the current transaction, so that they
+     * see their own persistence context.
+     *
+     * @param queryKey identifies the query and its arguments, within the entity class.
+     */
+    protected List<T> getCachedResultList(String queryKey, Supplier<List<T>> query) {
+        if (!resultCacheEnabled || !isResultCacheUsable()) {
+            return query.get();
+        }
+        long version = context.getVersion(getEntityClass());
+        CachedResult cached = resultCache.get(queryKey);
+        if (cached != null && cached.version == version) {
+            try {
+                return readCachedResult(cached);
+            } catch (IOException | RuntimeException e) {
+                log.debug("Discarding the cached result of {}, unable to read it.", queryKey, e);
+                resultCache.remove(queryKey, cached);
+            }
+        }
+        List<T> result = query.get();
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            cacheResult(queryKey, version, result);
+        } else {
+            List<T> snapshot = new ArrayList<>(result);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cacheResult(queryKey, version, snapshot);
+                }
+            });
+        }
+        return result;
+    }
+
+    private void cacheResult(String queryKey, long version, List<T> result) {
+        List<byte[]> entities = new ArrayList<>(result.size());
+        try {
+            for (T entity : result) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                resultCacheSerializer.write(entity, new DataOutputStream(bytes));
+                entities.add(bytes.toByteArray());
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Not caching the result of {}, unable to serialize it.", queryKey, e);
+            return;
+        }
+        resultCache.put(queryKey, new CachedResult(version, entities));
+    }
+
+    private List<T> readCachedResult(CachedResult cached) throws IOException {
+        List<T> result = new ArrayList<>(cached.entities.size());
+        for (byte[] entity : cached.entities) {
+            result.add(resultCacheSerializer.read(new DataInputStream(new ByteArrayInputStream(entity))));
+        }
+        return result;
+    }
+
+    private boolean isResultCacheUsable() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return true;
+        }
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                && TransactionSynchronizationManager.getResource(this) == null;
+    }
+
+    private static final class CachedResult {
+
+        private final long version;
+
+        private final List<byte[]> entities;
+
+        private CachedResult(long version, List<byte[]> entities) {
+            this.version = version;
+            this.entities = entities;
+        }
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY, readOnly = true)
+    public Stream<T> streamAll(int fetchSize) {
+        TypedQuery<T> query = createFindAllQuery();
+        query.setHint(HINT_FETCH_SIZE, fetchSize);
+        query.setHint(HINT_READ_ONLY, true);
+        return query.getResultStream().map(detachPrevious(getEntityManager()));
+    }
+
+    @Override
     @Transactional(readOnly = true)
-	public <K extends Serializable> Boolean isExists(K value) {
+    public void forEach(int fetchSize, Consumer<? super T> consumer) {
+        try (Stream<T> stream = streamAll(fetchSize)) {
+            stream.forEach(consumer);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Long countTotal(CountMode mode) {
+        if (mode == CountMode.EXACT) {
+            return countTotal();
+        }
+        if (mode == CountMode.ESTIMATED) {
+            Long estimate = estimateCount();
+            if (estimate != null) {
+                return estimate;
+            }
+        }
+        if (System.currentTimeMillis() < cachedCountExpiresAt) {
+            return cachedCount.get();
+        }
+        long version = context.getVersion(getEntityClass());
+        long count = countTotal();
+        synchronized (cachedCount) {
+            // A write committed meanwhile may already be counted or not, the next call counts again.
+            if (context.getVersion(getEntityClass()) == version) {
+                cachedCount.set(count);
+                cachedCountExpiresAt = System.currentTimeMillis() + countCacheTtlMillis;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the row count estimate of the database catalog statistics, or null if not available.
+     */
+    protected Long estimateCount() {
+        return null;
+    }
+
+    /**
+     * Returns the {@link org.gps.db.PrimaryKey} field of the entity class.
+     *
+     * @throws IllegalStateException if the entity class has no known {@link org.gps.db.PrimaryKey}.
+     */
+    protected Field getPrimaryKeyField() {
         Field field = context.getPrimaryKeyField(getEntityClass());
         if (field == null) {
             throw new IllegalStateException(String.format("Field with @PrimaryKey annotation not found for Entity: %s. " +
                             "Or please (re-)scan the package containing the entityClass.",
                     getEntityClass()));
         }
-        CriteriaBuilder cb = getEntityManager().getCriteriaBuilder();
-        CriteriaQuery<Boolean> query = cb.createQuery(Boolean.class);
-        Root<T> root = query.from(getEntityClass());
-        query.select(cb.literal(true));
-        Predicate predicate = cb.equal(root.get(field.getName()), value);
-        query.where(predicate);
+        return field;
+    }
+
+    protected TypedQuery<T> createFindAllQuery() {
+        return createNamedQuery(FIND_ALL_QUERY, getEntityClass());
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (warmUpQueries) {
+            warmUp();
+        }
+    }
+
+    /**
+     * Builds and registers the built-in queries, if not done yet, so that the first call does not pay for it.
+     */
+    public void warmUp() {
+        if (namedQueriesRegistered) {
+            return;
+        }
+        synchronized (this) {
+            if (namedQueriesRegistered) {
+                return;
+            }
+            EntityManagerFactory entityManagerFactory = getEntityManager().getEntityManagerFactory();
+            EntityManager entityManager = entityManagerFactory.createEntityManager();
+            try {
+                registerNamedQueries(entityManagerFactory, entityManager);
+            } finally {
+                entityManager.close();
+            }
+            namedQueriesRegistered = true;
+        }
+    }
+
+    /**
+     * Registers the built-in queries through {@link EntityManagerFactory#addNamedQuery}. Subclasses registering
+     * queries of their own should call super.
+     */
+    protected void registerNamedQueries(EntityManagerFactory entityManagerFactory, EntityManager entityManager) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<T> all = cb.createQuery(getEntityClass());
+        all.select(all.from(getEntityClass()));
+        entityManagerFactory.addNamedQuery(getQueryName(FIND_ALL_QUERY), entityManager.createQuery(all));
 
-        TypedQuery<Boolean> typedQuery = getEntityManager().createQuery(query);
-        return typedQuery.getResultList().stream().findFirst().orElse(false);
+        CriteriaQuery<Long> count = cb.createQuery(Long.class);
+        count.select(cb.count(count.from(getEntityClass())));
+        entityManagerFactory.addNamedQuery(getQueryName(COUNT_QUERY), entityManager.createQuery(count));
+
+        Field field = context.getPrimaryKeyField(getEntityClass());
+        if (field != null) {
+            CriteriaQuery<Boolean> exists = cb.createQuery(Boolean.class);
+            Root<T> root = exists.from(getEntityClass());
+            ParameterExpression<?> primaryKey = cb.parameter(ClassUtils.resolvePrimitiveIfNecessary(field.getType()),
+                    PRIMARY_KEY_PARAMETER);
+            exists.select(cb.literal(true)).where(cb.equal(root.get(field.getName()), primaryKey));
+            entityManagerFactory.addNamedQuery(getQueryName(EXISTS_QUERY), entityManager.createQuery(exists));
+
+            entityManagerFactory.addNamedQuery(getQueryName(EXISTS_ALL_QUERY), entityManager.createQuery(
+                    String.format("select e.%1$s from %2$s e where e.%1$s in :%3$s", field.getName(),
+                            getEntityName(entityManager), PRIMARY_KEYS_PARAMETER)));
+        }
+    }
+
+    /**
+     * JPQL name of the entity.
+     */
+    protected String getEntityName(EntityManager entityManager) {
+        return entityManager.getMetamodel().entity(getEntityClass()).getName();
+    }
+
+    /**
+     * Name of a built-in query of this entity class.
+     */
+    protected String getQueryName(String query) {
+        return getEntityClass().getName() + '.' + query;
+    }
+
+    /**
+     * Creates a built-in query, registering the built-in queries first if needed.
+     */
+    protected <R> TypedQuery<R> createNamedQuery(String query, Class<R> resultClass) {
+        warmUp();
+        return getEntityManager().createNamedQuery(getQueryName(query), resultClass);
+    }
+
+    /**
+     * Returns a (sequential) stream mapping that detaches each entity once the next one has been read, keeping the
+     * persistence context from growing with the stream.
+     */
+    protected static <E> UnaryOperator<E> detachPrevious(EntityManager entityManager) {
+        return new UnaryOperator<E>() {
+            private E previous;
+
+            @Override
+            public E apply(E current) {
+                if (previous != null) {
+                    entityManager.detach(previous);
+                }
+                previous = current;
+                return current;
+            }
+        };
+    }
+
+	@Override
+    @Transactional(readOnly = true)
+	public <K extends Serializable> Boolean isExists(K value) {
+        getPrimaryKeyField();
+        ExistenceFilter filter = checkExistenceFilter();
+        if (filter != null && !filter.mightContain(value)) {
+            return false;
+        }
+        TypedQuery<Boolean> typedQuery = createNamedQuery(EXISTS_QUERY, Boolean.class);
+        typedQuery.setParameter(PRIMARY_KEY_PARAMETER, value);
+        typedQuery.setMaxResults(1);
+        boolean exists = typedQuery.getResultList().stream().findFirst().orElse(false);
+        if (filter != null && !exists) {
+            filter.recordFalsePositive();
+        }
+        return exists;
 	}
 
+    @Override
+    @Transactional(readOnly = true)
+    public <K extends Serializable> Set<K> existsAll(Collection<K> values) {
+        getPrimaryKeyField();
+        ExistenceFilter filter = checkExistenceFilter();
+        Collection<K> candidates = values;
+        if (filter != null) {
+            candidates = new ArrayList<>();
+            for (K value : values) {
+                if (value != null && filter.mightContain(value)) {
+                    candidates.add(value);
+                }
+            }
+        }
+        Set<Object> existing = new HashSet<>();
+        for (List<K> chunk : chunk(candidates, getInClauseLimit())) {
+            existing.addAll(createNamedQuery(EXISTS_ALL_QUERY, Object.class)
+                    .setParameter(PRIMARY_KEYS_PARAMETER, chunk)
+                    .getResultList());
+        }
+        Set<K> result = new LinkedHashSet<>();
+        for (K value : candidates) {
+            if (value == null) {
+                continue;
+            }
+            if (existing.contains(value)) {
+                result.add(value);
+            } else if (filter != null) {
+                filter.recordFalsePositive();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Enables the Bloom-filter negative cache in front of {@link #isExists} and {@link #existsAll}, and builds it
+     * from the primary-key column. Keys persisted through this Dao are added to the filter; rows inserted by other
+     * means are only seen after a rebuild, see {@link ExistenceFilterConfig#getRebuildIntervalMillis()}.
+     */
+    public void enableExistenceFilter(ExistenceFilterConfig config) {
+        getPrimaryKeyField();
+        synchronized (this) {
+            if (existenceFilterExecutor == null) {
+                existenceFilterExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "existence-filter-" + getEntityClass().getSimpleName());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            existenceFilter = new ExistenceFilter(config);
+        }
+        rebuildExistenceFilter();
+    }
+
+    /**
+     * Disables the negative cache.
+     */
+    public synchronized void disableExistenceFilter() {
+        existenceFilter = null;
+        if (existenceFilterExecutor != null) {
+            existenceFilterExecutor.shutdown();
+            existenceFilterExecutor = null;
+        }
+    }
+
+    /**
+     * Rebuilds the negative cache by streaming the primary-key column, in a transaction of its own. Returns right away
+     * when a rebuild is already in progress.
+     */
+    public void rebuildExistenceFilter() {
+        ExistenceFilter filter = existenceFilter;
+        if (filter == null || !filter.tryStartRebuild()) {
+            return;
+        }
+        try {
+            rebuild(filter);
+        } finally {
+            filter.finishRebuild();
+        }
+    }
+
+    private void rebuild(ExistenceFilter filter) {
+        warmUp();
+        EntityManager entityManager = getEntityManager().getEntityManagerFactory().createEntityManager();
+        EntityTransaction transaction = entityManager.getTransaction();
+        try {
+            transaction.begin();
+            long rowCount = entityManager.createNamedQuery(getQueryName(COUNT_QUERY), Long.class).getSingleResult();
+            TypedQuery<Object> query = entityManager.createQuery(String.format("select e.%s from %s e",
+                    getPrimaryKeyField().getName(), getEntityName(entityManager)), Object.class);
+            query.setHint(HINT_FETCH_SIZE, filter.getConfig().getFetchSize());
+            filter.rebuild(rowCount, keys -> {
+                try (Stream<Object> stream = query.getResultStream()) {
+                    stream.forEach(keys);
+                }
+            });
+            transaction.commit();
+        } finally {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Returns the enabled negative cache, kicking off a background rebuild when it is stale. The rebuild is claimed
+     * before it is submitted, so callers racing on a stale filter submit it once.
+     */
+    private ExistenceFilter checkExistenceFilter() {
+        ExistenceFilter filter = existenceFilter;
+        if (filter != null && filter.isStale() && filter.tryStartRebuild()) {
+            try {
+                submitRebuild(filter);
+            } catch (RejectedExecutionException e) {
+                // Disabled meanwhile.
+                filter.finishRebuild();
+            }
+        }
+        return filter;
+    }
+
+    private synchronized void submitRebuild(ExistenceFilter filter) {
+        if (existenceFilterExecutor == null) {
+            throw new RejectedExecutionException("The existence filter is disabled");
+        }
+        existenceFilterExecutor.execute(() -> {
+            try {
+                rebuild(filter);
+            } catch (RuntimeException e) {
+                log.warn("Unable to rebuild the existence filter of {}", getEntityClass().getName(), e);
+            } finally {
+                filter.finishRebuild();
+            }
+        });
+    }
+
+    /**
+     * Adds the primary-key of a persisted entity to the negative cache. The key is added right away, so that the
+     * filter never denies a row this transaction is about to commit, and once more after commit for a rebuild that
+     * may have read the table before the row was visible.
+     */
+    protected void addToExistenceFilter(T entity) {
+        ExistenceFilter filter = existenceFilter;
+        if (filter == null) {
+            return;
+        }
+        Object key = context.getPrimaryKeyValue(entity);
+        if (key != null) {
+            filter.add(key);
+            TransactionCallbacks.afterCommit(() -> filter.add(key));
+        }
+    }
+
+    /**
+     * Adds the primary-keys of persisted entities to the negative cache, see {@link #addToExistenceFilter(Object)},
+     * with a single after commit callback.
+     */
+    private void addAllToExistenceFilter(List<Object> keys) {
+        ExistenceFilter filter = existenceFilter;
+        if (filter == null || keys.isEmpty()) {
+            return;
+        }
+        keys.forEach(filter::add);
+        TransactionCallbacks.afterCommit(() -> keys.forEach(filter::add));
+    }
+
+    /**
+     * Splits the distinct, non-null values into chunks of at most size elements.
+     */
+    protected static <V> List<List<V>> chunk(Collection<V> values, int size) {
+        List<List<V>> chunks = new ArrayList<>();
+        List<V> current = new ArrayList<>();
+        for (V value : new LinkedHashSet<>(values)) {
+            if (value == null) {
+                continue;
+            }
+            if (size > 0 && current.size() == size) {
+                chunks.add(current);
+                current = new ArrayList<>();
+            }
+            current.add(value);
+        }
+        if (!current.isEmpty()) {
+            chunks.add(current);
+        }
+        return chunks;
+    }
+
+    /**
+     * Registers a listener of the writes committed through this Dao. Writes of other nodes received on the
+     * {@link #getInvalidationBus() InvalidationBus} are published as updates of their keys.
+     */
+    public void addChangeListener(EntityChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(EntityChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * Records writes made through this Dao. The changes of a transaction are collected and, once it commits, move
+     * the data version of the entity class on and are published to the {@link EntityChangeListener}s. Without
+     * transaction synchronization they are published right away.
+     */
+    protected void recordChanges(Consumer<EntityChanges> recorder) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            EntityChanges changes = new EntityChanges(getEntityClass());
+            recorder.accept(changes);
+            publishChanges(changes);
+            return;
+        }
+        ChangesSynchronization synchronization =
+                ChangesSynchronization.class.cast(TransactionSynchronizationManager.getResource(this));
+        if (synchronization == null) {
+            synchronization = new ChangesSynchronization(this);
+            TransactionSynchronizationManager.bindResource(this, synchronization);
+            TransactionSynchronizationManager.registerSynchronization(synchronization);
+        }
+        recorder.accept(synchronization.changes);
+    }
+
+    private void publishChanges(EntityChanges changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        applyChanges(changes);
+        InvalidationBus bus = invalidationBus;
+        if (bus != null) {
+            try {
+                bus.publish(Invalidation.of(invalidationOrigin, changes));
+            } catch (RuntimeException e) {
+                log.warn("Unable to publish the invalidation of {}", changes, e);
+            }
+        }
+    }
+
+    private void applyChanges(EntityChanges changes) {
+        context.bumpVersion(getEntityClass());
+        synchronized (cachedCount) {
+            if (!changes.isRowCountKnown()) {
+                cachedCountExpiresAt = 0;
+            } else if (cachedCountExpiresAt != 0) {
+                cachedCount.addAndGet(changes.getInserted().size() - changes.getDeletedRows());
+            }
+        }
+        for (EntityChangeListener listener : changeListeners) {
+            try {
+                listener.committed(changes);
+            } catch (RuntimeException e) {
+                log.warn("Change listener {} failed on {}", listener, changes, e);
+            }
+        }
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Subscribes to the invalidations of the writes committed by other nodes, and publishes those of this Dao once
+     * they commit, coalesced per transaction.
+     */
+    public void setInvalidationBus(InvalidationBus invalidationBus) {
+        InvalidationBus previous = this.invalidationBus;
+        if (previous != null) {
+            previous.unsubscribe(invalidationListener);
+        }
+        this.invalidationBus = invalidationBus;
+        if (invalidationBus != null) {
+            Field primaryKey = context.getPrimaryKeyField(getEntityClass());
+            if (primaryKey != null) {
+                invalidationBus.registerKeyType(getEntityClass(), primaryKey.getType());
+            }
+            invalidationBus.subscribe(invalidationListener);
+        }
+    }
+
+    private void invalidated(Invalidation invalidation) {
+        if (invalidationOrigin.equals(invalidation.getOrigin())
+                || !getEntityClass().getName().equals(invalidation.getEntityClassName())) {
+            return;
+        }
+        EntityChanges changes = new EntityChanges(getEntityClass());
+        if (invalidation.isAll()) {
+            changes.deleted(null, 0);
+        } else {
+            ExistenceFilter filter = existenceFilter;
+            for (Object primaryKey : invalidation.getPrimaryKeys()) {
+                changes.upserted(primaryKey);
+                if (filter != null) {
+                    filter.add(primaryKey);
+                }
+            }
+        }
+        // Rows inserted or deleted elsewhere are not known, count them again.
+        cachedCountExpiresAt = 0;
+        applyChanges(changes);
+    }
+
+    /**
+     * Collects the changes of one transaction, bound to it as a resource keyed by the Dao.
+     */
+    private static final class ChangesSynchronization implements TransactionSynchronization {
+
+        private final AbstractDao<?> dao;
+
+        private final EntityChanges changes;
+
+        private ChangesSynchronization(AbstractDao<?> dao) {
+            this.dao = dao;
+            this.changes = new EntityChanges(dao.getEntityClass());
+        }
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(dao);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(dao, this);
+        }
+
+        @Override
+        public void afterCommit() {
+            dao.publishChanges(changes);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(dao);
+        }
+    }
+
     @Transactional
     @Override
     public void persist(T entity) {
@@ -113,17 +838,95 @@ public abstract class AbstractDao<T extends Serializable> implements Dao<T> {
 	    EntityManager entityManager = getEntityManager();
 	    if(!isDetached(entity) && !entityManager.contains(entity)) {
 	        entityManager.persist(entity);
+	        recordChanges(changes -> changes.inserted(context.getPrimaryKeyValue(entity)));
+        } else if (entityManager.contains(entity)) {
+            entityManager.merge(entity);
+            recordChanges(changes -> changes.updated(context.getPrimaryKeyValue(entity)));
         } else {
+            // The row may be gone, merge inserts it then: the row count is not known.
             entityManager.merge(entity);
+            recordChanges(changes -> changes.upserted(context.getPrimaryKeyValue(entity)));
         }
+        addToExistenceFilter(entity);
     }
 
+    /**
+     * Persists new and merges existing entities in batches. Existing rows are looked up with {@link #existsAll}
+     * instead of one query per entity, and the persistence context is flushed and cleared every
+     * {@link #getBatchSize()} entities so that it does not grow with the collection. Entities managed before the call
+     * are detached by the clear, with their changes flushed, and merged if they come up again after it.
+     */
     @Transactional
     @Override
     public void persist(Collection<T> tCollection) {
-        for(T t : tCollection) {
-            persist(t);
+        if (tCollection.isEmpty()) {
+            return;
+        }
+        log.debug(" persist(). {} entities of {}", tCollection.size(), getEntityClass().getName());
+        EntityManager entityManager = getEntityManager();
+        // The state of every entity is worked out up-front, the clears below detach the managed ones.
+        Set<T> managed = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Serializable> existing = findExistingPrimaryKeys(entityManager, tCollection, managed);
+        List<Object> inserted = new ArrayList<>();
+        List<Object> updated = new ArrayList<>();
+        // Keys written by this call, a later instance with the same key is merged into the row.
+        Set<Object> written = new HashSet<>();
+        List<Object> keys = new ArrayList<>(tCollection.size());
+        int count = 0;
+        for (T t : tCollection) {
+            if (entityManager.contains(t)) {
+                updated.add(context.getPrimaryKeyValue(t));
+            } else if (managed.contains(t)) {
+                // Managed before the call, or persisted earlier in the collection, and detached by a clear.
+                entityManager.merge(t);
+                updated.add(context.getPrimaryKeyValue(t));
+            } else {
+                Serializable primaryKey = context.getPrimaryKeyValue(t);
+                if (primaryKey != null && (existing.contains(primaryKey) || written.contains(primaryKey))) {
+                    entityManager.merge(t);
+                    updated.add(primaryKey);
+                } else {
+                    entityManager.persist(t);
+                    inserted.add(context.getPrimaryKeyValue(t));
+                }
+                managed.add(t);
+            }
+            Object key = context.getPrimaryKeyValue(t);
+            if (key != null) {
+                written.add(key);
+                keys.add(key);
+            }
+            if (++count % batchSize == 0 && count < tCollection.size()) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        addAllToExistenceFilter(keys);
+        entityManager.flush();
+        recordChanges(changes -> {
+            inserted.forEach(changes::inserted);
+            updated.forEach(changes::updated);
+        });
+    }
+
+    /**
+     * Returns the primary-keys of the given, not managed, entities that exist in the database, and collects the
+     * managed ones.
+     */
+    private Set<Serializable> findExistingPrimaryKeys(EntityManager entityManager, Collection<T> entities,
+                                                      Set<T> managed) {
+        List<Serializable> primaryKeys = new ArrayList<>();
+        for (T t : entities) {
+            if (entityManager.contains(t)) {
+                managed.add(t);
+            } else {
+                Serializable primaryKey = context.getPrimaryKeyValue(t);
+                if (primaryKey != null) {
+                    primaryKeys.add(primaryKey);
+                }
+            }
         }
+        return primaryKeys.isEmpty() ? new HashSet<>() : existsAll(primaryKeys);
     }
 
     /**
@@ -137,7 +940,13 @@ public abstract class AbstractDao<T extends Serializable> implements Dao<T> {
     	if(!isDetached(entity) && !entityManager.contains(entity)) {
     	    entityManager.remove(entity);
         } else {
-    	    entityManager.remove(findByEntity(entity));
+            T managed = findByEntity(entity);
+            if (managed != null) {
+                entityManager.remove(managed);
+                recordChanges(changes -> changes.deleted(context.getPrimaryKeyValue(managed)));
+            } else {
+                log.debug("delete entity -> {} not found, nothing to delete", entity.getClass().getName());
+            }
         }
     }
 
@@ -22,16 +22,41 @@
 
 package org.gps.db.dao;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.PersistenceException;
 import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaDelete;
 import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.SingularAttribute;
 import org.gps.db.Context;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * An abstract implementation of {@link Dao} for {@link jakarta.persistence.Entity} that has
@@ -47,6 +72,16 @@ public abstract class AbstractPrimaryKeyBasedDao<K extends Serializable, T exten
 
     protected Class<T> typeParamEntityClass;
 
+	/**
+	 * Looks the entity up in the database when {@link #isDetached} cannot tell new from detached entities in memory.
+	 * Off by default: such entities are then treated as detached and merged, which inserts them if they are new.
+	 */
+	private boolean detachedCheckFallbackToDatabase;
+
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private volatile EntityStateMetadata entityStateMetadata;
+
 	public AbstractPrimaryKeyBasedDao(Context context) {
 		super(context);
 	}
@@ -57,22 +92,250 @@ public abstract class AbstractPrimaryKeyBasedDao<K extends Serializable, T exten
         return getEntityManager().find(getEntityClass(), primaryKey);
     }
 
+	/**
+	 * Loads the entities with IN queries of at most {@link #getInClauseLimit()} keys.
+	 */
 	@Transactional(readOnly = true)
 	@Override
-	public Long countTotal() {
+	public List<T> findByPrimaryKeys(Collection<K> primaryKeys) {
+		String primaryKey = getPrimaryKeyField().getName();
+		Map<Object, T> found = new HashMap<>();
+		for (List<K> chunk : chunk(primaryKeys, getInClauseLimit())) {
+			CriteriaBuilder cb = getEntityManager().getCriteriaBuilder();
+			CriteriaQuery<T> cq = cb.createQuery(getEntityClass());
+			Root<T> root = cq.from(getEntityClass());
+			cq.select(root).where(root.get(primaryKey).in(chunk));
+			for (T entity : getEntityManager().createQuery(cq).getResultList()) {
+				found.put(context.getPrimaryKeyValue(entity), entity);
+			}
+		}
+		List<T> result = new ArrayList<>(primaryKeys.size());
+		for (K key : primaryKeys) {
+			result.add(key == null ? null : found.get(key));
+		}
+		return result;
+	}
+
+	/**
+	 * Deletes with bulk DELETE statements of at most {@link #getInClauseLimit()} keys.
+	 */
+	@Transactional
+	@Override
+	public int deleteByPrimaryKeys(Collection<K> primaryKeys) {
+		String primaryKey = getPrimaryKeyField().getName();
+		List<List<K>> chunks = chunk(primaryKeys, getInClauseLimit());
+		if (chunks.isEmpty()) {
+			return 0;
+		}
+		EntityManager entityManager = getEntityManager();
+		entityManager.flush();
+		int deleted = 0;
+		for (List<K> chunk : chunks) {
+			CriteriaDelete<T> delete = entityManager.getCriteriaBuilder().createCriteriaDelete(getEntityClass());
+			Root<T> root = delete.from(getEntityClass());
+			delete.where(root.get(primaryKey).in(chunk));
+			deleted += entityManager.createQuery(delete).executeUpdate();
+		}
+		evictDeleted(primaryKeys);
+		long rows = deleted;
+		Set<K> keys = new LinkedHashSet<>();
+		chunks.forEach(keys::addAll);
+		recordChanges(changes -> changes.deleted(keys, rows));
+		return deleted;
+	}
+
+	@Transactional
+	@Override
+	public int deleteWhere(PredicateBuilder<T> predicate) {
+		EntityManager entityManager = getEntityManager();
+		entityManager.flush();
+		CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		CriteriaDelete<T> delete = cb.createCriteriaDelete(getEntityClass());
+		Root<T> root = delete.from(getEntityClass());
+		delete.where(predicate.build(cb, root));
+		int deleted = entityManager.createQuery(delete).executeUpdate();
+		evictDeleted(null);
+		recordChanges(changes -> changes.deleted(null, deleted));
+		return deleted;
+	}
+
+	/**
+	 * Removes the instances deleted by a bulk DELETE from the persistence context, which the statement bypasses.
+	 * Clears the whole persistence context, after the pending changes were flushed; providers able to tell the
+	 * managed instances apart should override.
+	 *
+	 * @param primaryKeys the deleted primary keys, or null if not known.
+	 */
+	protected void evictDeleted(Collection<K> primaryKeys) {
+		getEntityManager().clear();
+	}
+
+	@Transactional(readOnly = true)
+	@Override
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public KeysetPage<K, T> findPageAfter(K lastKey, int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("pageSize must be at least 1: " + pageSize);
+		}
 		CriteriaBuilder cb = getEntityManager().getCriteriaBuilder();
-		CriteriaQuery<Long> cq = cb.createQuery(Long.class);
-		cq.select(cb.count(cq.from(getEntityClass())));
-		return getEntityManager().createQuery(cq).getSingleResult();
+		CriteriaQuery<T> cq = cb.createQuery(getEntityClass());
+		Root<T> root = cq.from(getEntityClass());
+		Path<Comparable> primaryKey = root.get(getPrimaryKeyField().getName());
+		cq.select(root).orderBy(cb.asc(primaryKey));
+		if (lastKey != null) {
+			cq.where(cb.greaterThan(primaryKey, (Comparable) lastKey));
+		}
+		// One extra row tells whether there is a next page.
+		List<T> results = getEntityManager().createQuery(cq)
+				.setMaxResults(pageSize + 1)
+				.getResultList();
+		if (results.size() <= pageSize) {
+			return new KeysetPage<>(results, null);
+		}
+		List<T> content = new ArrayList<>(results.subList(0, pageSize));
+		K nextKey = context.getPrimaryKeyValue(content.get(pageSize - 1));
+		return new KeysetPage<>(content, nextKey);
+	}
+
+	@Override
+	public long scanPartitioned(PartitionedScanConfig config, Consumer<? super T> consumer) {
+		Field primaryKey = getPrimaryKeyField();
+		return new PartitionedTableScan<>(getEntityManager().getEntityManagerFactory(), getEntityClass(),
+				primaryKey.getName(), primaryKey.getType(), config).scan(consumer);
 	}
 
+	@Transactional(readOnly = true)
+	@Override
+	public Long countTotal() {
+		return createNamedQuery(COUNT_QUERY, Long.class).getSingleResult();
+	}
+
+	/**
+	 * Tells detached from new entities without a database round trip where possible, see {@link #isTransient}.
+	 */
 	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
 	@Override
 	public boolean isDetached(T entity) {
+		EntityManager entityManager = getEntityManager();
+		if (entityManager.contains(entity)) {
+			return false;
+		}
 		Object primaryKeyValue = context.getPrimaryKeyValue(entity);
-		return primaryKeyValue != null
-				&& !getEntityManager().contains(entity)  // must not be managed now
-				&& findByEntity(entity) != null;  // must not have been removed
+		if (primaryKeyValue == null) {
+			primaryKeyValue = getIdentifier(entityManager, entity);
+		}
+		if (primaryKeyValue == null) {
+			return false;
+		}
+		Boolean isTransient = isTransient(entity);
+		if (isTransient != null) {
+			return !isTransient;
+		}
+		return !detachedCheckFallbackToDatabase || findByEntity(entity) != null;
+	}
+
+	/**
+	 * Tells from the in-memory state of an entity that has an id whether it is new (true) or has been persisted
+	 * before (false), null if it cannot tell. A null wrapper {@link jakarta.persistence.Version} means new, a non-null
+	 * version or a {@link GeneratedValue} id means persisted before, unless the id is the default 0 of a primitive
+	 * type, which is the unsaved value of such ids.
+	 */
+	protected Boolean isTransient(T entity) {
+		EntityStateMetadata metadata = getEntityStateMetadata();
+		if (metadata.version != null) {
+			return read(metadata.version, entity) == null;
+		}
+		if (metadata.generatedId != null) {
+			return metadata.primitiveId && isPrimitiveDefault(read(metadata.generatedId, entity));
+		}
+		return null;
+	}
+
+	private static boolean isPrimitiveDefault(Object primaryKeyValue) {
+		return primaryKeyValue instanceof Number && ((Number) primaryKeyValue).longValue() == 0;
+	}
+
+	private static Object getIdentifier(EntityManager entityManager, Object entity) {
+		try {
+			return entityManager.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(entity);
+		} catch (IllegalArgumentException | PersistenceException e) {
+			return null;
+		}
+	}
+
+	private EntityStateMetadata getEntityStateMetadata() {
+		EntityStateMetadata metadata = entityStateMetadata;
+		if (metadata == null) {
+			metadata = new EntityStateMetadata(getEntityManager().getMetamodel().entity(getEntityClass()));
+			entityStateMetadata = metadata;
+		}
+		return metadata;
+	}
+
+	private static Object read(MethodHandle getter, Object entity) {
+		try {
+			return (Object) getter.invokeExact(entity);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException(t);
+		}
+	}
+
+	/**
+	 * Version attribute and generated id of the entity class, resolved from the JPA metamodel once and read through
+	 * {@link MethodHandle}s.
+	 */
+	private static final class EntityStateMetadata {
+
+		private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+		private final MethodHandle version;
+
+		private final MethodHandle generatedId;
+
+		private final boolean primitiveId;
+
+		EntityStateMetadata(EntityType<?> entityType) {
+			MethodHandle versionGetter = null;
+			MethodHandle generatedIdGetter = null;
+			boolean primitive = false;
+			for (SingularAttribute<?, ?> attribute : entityType.getSingularAttributes()) {
+				Member member = attribute.getJavaMember();
+				if (attribute.isVersion() && !attribute.getJavaType().isPrimitive()) {
+					versionGetter = getter(member);
+				} else if (attribute.isId() && member instanceof AnnotatedElement
+						&& ((AnnotatedElement) member).isAnnotationPresent(GeneratedValue.class)) {
+					generatedIdGetter = getter(member);
+					primitive = attribute.getJavaType().isPrimitive();
+				}
+			}
+			this.version = versionGetter;
+			this.generatedId = generatedIdGetter;
+			this.primitiveId = primitive;
+		}
+
+		private static MethodHandle getter(Member member) {
+			if (!(member instanceof Field) && !(member instanceof Method)) {
+				return null;
+			}
+			try {
+				MethodHandles.Lookup lookup;
+				try {
+					lookup = MethodHandles.privateLookupIn(member.getDeclaringClass(), MethodHandles.lookup());
+				} catch (IllegalAccessException e) {
+					// Declaring class lives in a module that is not open to us, fall back to plain reflective access.
+					((AccessibleObject) member).setAccessible(true);
+					lookup = MethodHandles.lookup();
+				}
+				MethodHandle getter = member instanceof Field
+						? lookup.unreflectGetter((Field) member)
+						: lookup.unreflect((Method) member);
+				return getter.asType(GETTER_TYPE);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(String.format("Unable to access %s", member), e);
+			}
+		}
 	}
 
 	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
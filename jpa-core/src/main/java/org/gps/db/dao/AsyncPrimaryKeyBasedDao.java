@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.db.dao;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Asynchronous facade of a {@link PrimaryKeyBasedDao} bean, returning {@link CompletableFuture}s.
+ * <p>
+ * Calls run on virtual threads on Java 21 and later, and on a pool of maxConcurrency platform threads before. At most
+ * maxConcurrency calls run at the same time whatever the executor, which should not exceed the connection pool size.
+ * <p>
+ * Spring binds transactions and {@link jakarta.persistence.EntityManager}s to the calling thread, and a JDBC connection
+ * cannot be shared across threads. Each call therefore runs in a transaction of its own on the worker thread, as
+ * declared on the Dao, and returns detached entities. Calls from within an active transaction are rejected, since they
+ * could neither see its uncommitted changes nor take part in its commit or rollback.
+ */
+@Slf4j
+public class AsyncPrimaryKeyBasedDao<K extends Serializable, T extends Serializable> implements AutoCloseable {
+
+    private final PrimaryKeyBasedDao<K, T> dao;
+
+    private final ExecutorService executor;
+
+    private final Semaphore permits;
+
+    public AsyncPrimaryKeyBasedDao(PrimaryKeyBasedDao<K, T> dao, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1: " + maxConcurrency);
+        }
+        this.dao = dao;
+        this.permits = new Semaphore(maxConcurrency);
+        this.executor = createExecutor(maxConcurrency);
+    }
+
+    /**
+     * Creates a virtual-thread-per-task executor when the JVM supports it, otherwise a fixed pool.
+     */
+    private static ExecutorService createExecutor(int maxConcurrency) {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            log.debug("Async Dao calls run on virtual threads.");
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            log.debug("Virtual threads unavailable, async Dao calls run on a pool of {} threads.", maxConcurrency);
+        }
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "async-dao-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Runs the operation against the Dao asynchronously.
+     */
+    public <R> CompletableFuture<R> execute(Function<? super PrimaryKeyBasedDao<K, T>, R> operation) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Async Dao calls cannot join the caller's transaction, " +
+                    "call the Dao directly or outside of the transaction.");
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            try {
+                return operation.apply(dao);
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    public CompletableFuture<T> findByPrimaryKey(K primaryKey) {
+        return execute(target -> target.findByPrimaryKey(primaryKey));
+    }
+
+    public CompletableFuture<List<T>> findByPrimaryKeys(Collection<K> primaryKeys) {
+        return execute(target -> target.findByPrimaryKeys(primaryKeys));
+    }
+
+    public CompletableFuture<List<T>> findAll() {
+        return execute(Dao::findAll);
+    }
+
+    public CompletableFuture<KeysetPage<K, T>> findPageAfter(K lastKey, int pageSize) {
+        return execute(target -> target.findPageAfter(lastKey, pageSize));
+    }
+
+    public CompletableFuture<Long> countTotal() {
+        return execute(Dao::countTotal);
+    }
+
+    public CompletableFuture<Long> countTotal(CountMode mode) {
+        return execute(target -> target.countTotal(mode));
+    }
+
+    public CompletableFuture<Boolean> isExists(K primaryKey) {
+        return execute(target -> target.isExists(primaryKey));
+    }
+
+    public CompletableFuture<Set<K>> existsAll(Collection<K> primaryKeys) {
+        return execute(target -> target.existsAll(primaryKeys));
+    }
+
+    public CompletableFuture<Void> persist(T entity) {
+        return execute(target -> {
+            target.persist(entity);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> persist(Collection<T> entities) {
+        return execute(target -> {
+            target.persist(entities);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> delete(T entity) {
+        return execute(target -> {
+            target.delete(entity);
+            return null;
+        });
+    }
+
+    /**
+     * Number of calls that can start right now without waiting for a permit.
+     */
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    /**
+     * Stops accepting calls and waits for the running ones to complete. If interrupted while waiting, returns with
+     * the interrupt flag set.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.warn("Async Dao calls still running after 1 minute.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
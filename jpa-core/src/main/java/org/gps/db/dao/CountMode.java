@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.db.dao;
+
+/**
+ * Exactness of {@link Dao#countTotal(CountMode)}.
+ */
+public enum CountMode {
+
+    /**
+     * {@code SELECT COUNT(*)} on every call.
+     */
+    EXACT,
+
+    /**
+     * Exact count, cached for {@link AbstractDao#getCountCacheTtlMillis()} and adjusted by the inserts and deletes
+     * committed through the Dao meanwhile. Writes made by other means are seen once the cache expires.
+     */
+    CACHED,
+
+    /**
+     * Row count estimate from the database catalog statistics, as fresh as the database keeps them. Falls back to
+     * {@link #CACHED} where the database has no estimate.
+     */
+    ESTIMATED
+}
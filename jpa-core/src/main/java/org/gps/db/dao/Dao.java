@@ -25,6 +25,9 @@ package org.gps.db.dao;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Base Dao definition.
@@ -36,17 +39,42 @@ public interface Dao<T extends Serializable> {
      */
     Long countTotal();
 
+    /**
+     * Count total number of records, as exact as the mode asks for.
+     */
+    Long countTotal(CountMode mode);
+
     /**
      * Finds all the resources.
      *
      */
     List<T> findAll();
 
+    /**
+     * Streams all the resources, fetching fetchSize rows at a time. Every resource is detached once the next one is
+     * read, so memory stays constant regardless of the number of rows.
+     * <p>
+     * The stream is backed by an open cursor: it must be consumed and closed within the caller's transaction.
+     */
+    Stream<T> streamAll(int fetchSize);
+
+    /**
+     * Passes all the resources to the consumer, fetching fetchSize rows at a time with constant memory.
+     */
+    void forEach(int fetchSize, Consumer<? super T> consumer);
+
     /**
      * Checks if the entity with primary-key exists.
      */
     <K extends Serializable> Boolean isExists(K value);
 
+    /**
+     * Checks which of the primary-keys exist, in as few round trips as possible.
+     *
+     * @return the existing primary-keys, iterating in the order of the given values.
+     */
+    <K extends Serializable> Set<K> existsAll(Collection<K> values);
+
     /**
      * Persists the entity.
      *
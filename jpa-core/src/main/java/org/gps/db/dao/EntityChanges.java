@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.db.dao;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Writes made through a Dao within one transaction, published to the {@link EntityChangeListener}s after commit.
+ */
+public class EntityChanges {
+
+    private final Class<?> entityClass;
+
+    private final Set<Object> inserted = new LinkedHashSet<>();
+
+    private final Set<Object> updated = new LinkedHashSet<>();
+
+    private final Set<Object> deleted = new LinkedHashSet<>();
+
+    private long deletedRows;
+
+    private boolean unknownRowsChanged;
+
+    private boolean rowCountKnown = true;
+
+    public EntityChanges(Class<?> entityClass) {
+        this.entityClass = entityClass;
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * Primary keys of the inserted entities.
+     */
+    public Set<Object> getInserted() {
+        return Collections.unmodifiableSet(inserted);
+    }
+
+    /**
+     * Primary keys of the updated entities, not inserted or deleted in the same transaction.
+     */
+    public Set<Object> getUpdated() {
+        return Collections.unmodifiableSet(updated);
+    }
+
+    /**
+     * Primary keys of the deleted entities, where known.
+     */
+    public Set<Object> getDeleted() {
+        return Collections.unmodifiableSet(deleted);
+    }
+
+    /**
+     * Number of deleted rows, including the rows of bulk deletes whose keys are not known.
+     */
+    public long getDeletedRows() {
+        return deletedRows;
+    }
+
+    /**
+     * True if rows were changed whose keys are not known, e.g. by a bulk delete with a predicate.
+     */
+    public boolean isUnknownRowsChanged() {
+        return unknownRowsChanged;
+    }
+
+    /**
+     * False if rows were written without knowing whether they were inserted or updated, e.g. by an upsert.
+     */
+    public boolean isRowCountKnown() {
+        return rowCountKnown;
+    }
+
+    public boolean isEmpty() {
+        return inserted.isEmpty() && updated.isEmpty() && deleted.isEmpty() && deletedRows == 0
+                && !unknownRowsChanged;
+    }
+
+    public void inserted(Object primaryKey) {
+        if (primaryKey == null) {
+            return;
+        }
+        if (deleted.remove(primaryKey)) {
+            // Deleted and inserted again, the row count is unchanged.
+            deletedRows--;
+            updated.add(primaryKey);
+        } else {
+            inserted.add(primaryKey);
+        }
+    }
+
+    public void updated(Object primaryKey) {
+        if (primaryKey != null && !inserted.contains(primaryKey)) {
+            updated.add(primaryKey);
+        }
+    }
+
+    /**
+     * Records a row that was either inserted or updated.
+     */
+    public void upserted(Object primaryKey) {
+        if (primaryKey != null && !inserted.contains(primaryKey)) {
+            deleted.remove(primaryKey);
+            updated.add(primaryKey);
+            rowCountKnown = false;
+        }
+    }
+
+    public void deleted(Object primaryKey) {
+        if (primaryKey == null) {
+            return;
+        }
+        updated.remove(primaryKey);
+        if (!inserted.remove(primaryKey)) {
+            deleted.add(primaryKey);
+            deletedRows++;
+        }
+    }
+
+    /**
+     * Records a bulk delete of rows, of the given keys when known.
+     */
+    public void deleted(Set<?> primaryKeys, long rows) {
+        if (primaryKeys == null) {
+            unknownRowsChanged = true;
+        } else {
+            for (Object primaryKey : primaryKeys) {
+                updated.remove(primaryKey);
+                if (inserted.remove(primaryKey)) {
+                    // Inserted by this transaction, the rows count it but it never counted as a row before.
+                    rows--;
+                } else {
+                    deleted.add(primaryKey);
+                }
+            }
+        }
+        deletedRows += rows;
+    }
+
+    @Override
+    public String toString() {
+        return "EntityChanges(" + entityClass.getName() + ", inserted=" + inserted.size() + ", updated="
+                + updated.size() + ", deleted=" + deletedRows + (unknownRowsChanged ? ", unknown rows" : "") + ")";
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.db.dao;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A page of entities read with keyset (seek) pagination, ordered by {@link org.gps.db.PrimaryKey}.
+ *
+ * @param <K> primary-key type.
+ * @param <T> entity type.
+ */
+@Data
+public class KeysetPage<K extends Serializable, T extends Serializable> {
+
+    /**
+     * Entities of this page.
+     */
+    private final List<T> content;
+
+    /**
+     * Cursor to pass to {@link PrimaryKeyBasedDao#findPageAfter(Serializable, int)} for the next page, or null if
+     * this is the last page.
+     */
+    private final K nextKey;
+
+    /**
+     * Returns true if there is a page after this one.
+     */
+    public boolean hasNext() {
+        return nextKey != null;
+    }
+}
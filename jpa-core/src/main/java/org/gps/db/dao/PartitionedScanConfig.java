@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.db.dao;
+
+import lombok.Data;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Configuration of {@link PrimaryKeyBasedDao#scanPartitioned(PartitionedScanConfig, java.util.function.Consumer)}.
+ */
+@Data
+public class PartitionedScanConfig {
+
+    /**
+     * Number of primary-key ranges the table is split into.
+     */
+    private int partitions = 4;
+
+    /**
+     * Maximum number of partitions read at the same time. Each partition holds its own connection for the whole
+     * time it is read, so this must stay below the connection pool size, minus the connections the rest of the
+     * application needs meanwhile.
+     */
+    private int parallelism = 2;
+
+    /**
+     * JDBC fetch size used to read each partition.
+     */
+    private int fetchSize = 500;
+
+    /**
+     * Executor the partitions are read on. When null, a fixed pool of {@link #parallelism} threads is created for the
+     * scan and shut down afterwards.
+     */
+    private Executor executor;
+}
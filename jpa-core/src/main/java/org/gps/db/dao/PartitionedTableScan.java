@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.db.dao;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Reads a whole table in parallel by splitting its primary-key range into partitions, each read on its own
+ * {@link EntityManager} and resource-local transaction.
+ * <p>
+ * Integral keys are split evenly between their min and max value. Other keys (strings, UUIDs, ...) are split at
+ * the first key of each {@code ntile} bucket of the primary-key order, or, when the provider or database does not
+ * support window functions, at evenly spaced keys read in one ordered pass over the primary-key.
+ * <p>
+ * At most {@link PartitionedScanConfig#getParallelism()} partitions are submitted to the executor at a time, so that
+ * a shared executor never has threads blocked waiting for a connection permit.
+ */
+@Slf4j
+@SuppressWarnings({"unchecked", "rawtypes"})
+class PartitionedTableScan<T> {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final Class<T> entityClass;
+    private final String primaryKey;
+    private final Class<?> primaryKeyType;
+    private final PartitionedScanConfig config;
+
+    PartitionedTableScan(EntityManagerFactory entityManagerFactory, Class<T> entityClass, String primaryKey,
+                         Class<?> primaryKeyType, PartitionedScanConfig config) {
+        if (config.getPartitions() < 1 || config.getParallelism() < 1) {
+            throw new IllegalArgumentException("partitions and parallelism must be at least 1: " + config);
+        }
+        this.entityManagerFactory = entityManagerFactory;
+        this.entityClass = entityClass;
+        this.primaryKey = primaryKey;
+        this.primaryKeyType = primaryKeyType;
+        this.config = config;
+    }
+
+    /**
+     * Reads every entity and passes it to the consumer, which is called concurrently from several threads.
+     *
+     * @return the number of entities read.
+     */
+    long scan(Consumer<? super T> consumer) {
+        List<Comparable> splitPoints = splitPoints();
+        log.debug("Scanning {} in {} partitions split at {}", entityClass.getName(), splitPoints.size() + 1,
+                splitPoints);
+
+        ExecutorService ownExecutor = config.getExecutor() == null
+                ? Executors.newFixedThreadPool(config.getParallelism())
+                : null;
+        Semaphore connections = new Semaphore(config.getParallelism());
+        AtomicBoolean failed = new AtomicBoolean();
+        AtomicLong count = new AtomicLong();
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i <= splitPoints.size() && !failed.get(); i++) {
+                Comparable lower = i == 0 ? null : splitPoints.get(i - 1);
+                Comparable upper = i == splitPoints.size() ? null : splitPoints.get(i);
+                // Waits here rather than in the task, so no executor thread is held by a waiting partition.
+                connections.acquireUninterruptibly();
+                try {
+                    futures.add(CompletableFuture.runAsync(() -> {
+                        try {
+                            if (!failed.get()) {
+                                count.addAndGet(readPartition(lower, upper, consumer));
+                            }
+                        } catch (RuntimeException | Error e) {
+                            failed.set(true);
+                            throw e;
+                        } finally {
+                            connections.release();
+                        }
+                    }, ownExecutor != null ? ownExecutor : config.getExecutor()));
+                } catch (RejectedExecutionException e) {
+                    connections.release();
+                    throw e;
+                }
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        } finally {
+            if (ownExecutor != null) {
+                ownExecutor.shutdown();
+            }
+        }
+        return count.get();
+    }
+
+    /**
+     * Reads the entities with lower &lt;= primary-key &lt; upper, a null bound being open.
+     */
+    private long readPartition(Comparable lower, Comparable upper, Consumer<? super T> consumer) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        EntityTransaction transaction = entityManager.getTransaction();
+        long count = 0;
+        try {
+            transaction.begin();
+            CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+            CriteriaQuery<T> cq = cb.createQuery(entityClass);
+            Root<T> root = cq.from(entityClass);
+            Path<Comparable> key = root.get(primaryKey);
+            List<Predicate> predicates = new ArrayList<>();
+            if (lower != null) {
+                predicates.add(cb.greaterThanOrEqualTo(key, lower));
+            }
+            if (upper != null) {
+                predicates.add(cb.lessThan(key, upper));
+            }
+            cq.select(root).where(predicates.toArray(new Predicate[0]));
+            TypedQuery<T> query = entityManager.createQuery(cq);
+            query.setHint(AbstractDao.HINT_FETCH_SIZE, config.getFetchSize());
+            query.setHint(AbstractDao.HINT_READ_ONLY, true);
+            try (Stream<T> stream = query.getResultStream().map(AbstractDao.detachPrevious(entityManager))) {
+                for (T entity : (Iterable<T>) stream::iterator) {
+                    consumer.accept(entity);
+                    count++;
+                }
+            }
+            transaction.commit();
+            return count;
+        } finally {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+            entityManager.close();
+        }
+    }
+
+    private List<Comparable> splitPoints() {
+        if (config.getPartitions() == 1) {
+            return new ArrayList<>();
+        }
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            return isIntegral() ? integralSplitPoints(entityManager) : sampledSplitPoints(entityManager);
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private boolean isIntegral() {
+        return primaryKeyType == Long.class || primaryKeyType == long.class
+                || primaryKeyType == Integer.class || primaryKeyType == int.class
+                || primaryKeyType == Short.class || primaryKeyType == short.class
+                || primaryKeyType == Byte.class || primaryKeyType == byte.class
+                || primaryKeyType == BigInteger.class;
+    }
+
+    private List<Comparable> integralSplitPoints(EntityManager entityManager) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> cq = cb.createQuery(Object[].class);
+        Root<T> root = cq.from(entityClass);
+        Path<Number> key = root.get(primaryKey);
+        cq.multiselect(cb.min(key), cb.max(key));
+        Object[] range = entityManager.createQuery(cq).getSingleResult();
+        List<Comparable> splitPoints = new ArrayList<>();
+        if (range[0] == null) {
+            return splitPoints;
+        }
+        BigInteger min = toBigInteger((Number) range[0]);
+        BigInteger span = toBigInteger((Number) range[1]).subtract(min).add(BigInteger.ONE);
+        BigInteger partitions = BigInteger.valueOf(config.getPartitions());
+        Comparable previous = null;
+        for (int i = 1; i < config.getPartitions(); i++) {
+            BigInteger point = min.add(span.multiply(BigInteger.valueOf(i)).divide(partitions));
+            Comparable splitPoint = fromBigInteger(point);
+            if (!splitPoint.equals(previous)) {
+                splitPoints.add(splitPoint);
+                previous = splitPoint;
+            }
+        }
+        return splitPoints;
+    }
+
+    private List<Comparable> sampledSplitPoints(EntityManager entityManager) {
+        try {
+            return ntileSplitPoints(entityManager);
+        } catch (RuntimeException e) {
+            log.debug("Window functions not available for {}, reading the split points in one pass: {}",
+                    entityClass.getName(), e.toString());
+            return orderedPassSplitPoints(entityManager);
+        }
+    }
+
+    /**
+     * Splits at the first key of every {@code ntile} bucket but the first, in a single query.
+     */
+    private List<Comparable> ntileSplitPoints(EntityManager entityManager) {
+        String entityName = entityManager.getMetamodel().entity(entityClass).getName();
+        List<Comparable> firstKeys = entityManager.createQuery(String.format(
+                "select min(s.k) from (select e.%1$s as k, ntile(%2$d) over (order by e.%1$s) as b from %3$s e) s "
+                        + "group by s.b", primaryKey, config.getPartitions(), entityName), Comparable.class)
+                .getResultList();
+        firstKeys.sort(null);
+        return firstKeys.isEmpty() ? new ArrayList<>() : new ArrayList<>(firstKeys.subList(1, firstKeys.size()));
+    }
+
+    /**
+     * Reads the keys in order once, keeping those at evenly spaced positions.
+     */
+    private List<Comparable> orderedPassSplitPoints(EntityManager entityManager) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> countQuery = cb.createQuery(Long.class);
+        countQuery.select(cb.count(countQuery.from(entityClass)));
+        long total = entityManager.createQuery(countQuery).getSingleResult();
+
+        CriteriaQuery<Comparable> cq = cb.createQuery(Comparable.class);
+        Root<T> root = cq.from(entityClass);
+        Path<Comparable> key = root.get(primaryKey);
+        cq.select(key).orderBy(cb.asc(key));
+        TypedQuery<Comparable> query = entityManager.createQuery(cq);
+        query.setHint(AbstractDao.HINT_FETCH_SIZE, config.getFetchSize());
+
+        List<Comparable> splitPoints = new ArrayList<>();
+        int partition = 1;
+        long next = total / config.getPartitions();
+        long position = 0;
+        try (Stream<Comparable> keys = query.getResultStream()) {
+            for (Comparable value : (Iterable<Comparable>) keys::iterator) {
+                if (partition >= config.getPartitions()) {
+                    break;
+                }
+                if (position == next) {
+                    if (position > 0 && (splitPoints.isEmpty()
+                            || !value.equals(splitPoints.get(splitPoints.size() - 1)))) {
+                        splitPoints.add(value);
+                    }
+                    partition++;
+                    next = total * partition / config.getPartitions();
+                    // Positions may repeat when there are fewer keys than partitions.
+                    while (next == position && partition < config.getPartitions()) {
+                        partition++;
+                        next = total * partition / config.getPartitions();
+                    }
+                }
+                position++;
+            }
+        }
+        return splitPoints;
+    }
+
+    private static BigInteger toBigInteger(Number number) {
+        return number instanceof BigInteger ? (BigInteger) number : BigInteger.valueOf(number.longValue());
+    }
+
+    private Comparable fromBigInteger(BigInteger value) {
+        if (primaryKeyType == Long.class || primaryKeyType == long.class) {
+            return value.longValue();
+        } else if (primaryKeyType == Integer.class || primaryKeyType == int.class) {
+            return value.intValue();
+        } else if (primaryKeyType == Short.class || primaryKeyType == short.class) {
+            return value.shortValue();
+        } else if (primaryKeyType == Byte.class || primaryKeyType == byte.class) {
+            return value.byteValue();
+        }
+        return value;
+    }
+}
@@ -25,6 +25,9 @@ package org.gps.db.dao;
 import org.gps.db.Context;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Represents {@link Dao} for {@link jakarta.persistence.Entity}s with {@link org.gps.db.PrimaryKey}.
@@ -37,6 +40,42 @@ public interface PrimaryKeyBasedDao<K extends Serializable, T extends Serializab
      */
     T findByPrimaryKey(K primaryKey);
 
+    /**
+     * Finds the entities of the primary keys in as few round trips as possible.
+     *
+     * @return the entities in the order of the given primary keys, with null for the keys that do not exist.
+     */
+    List<T> findByPrimaryKeys(Collection<K> primaryKeys);
+
+    /**
+     * Finds the page of at most pageSize entities whose primary-key follows lastKey, in primary-key order.
+     * Pass a null lastKey for the first page, and {@link KeysetPage#getNextKey()} for the following ones.
+     */
+    KeysetPage<K, T> findPageAfter(K lastKey, int pageSize);
+
+    /**
+     * Reads all the entities concurrently, split into primary-key ranges that are each read on their own
+     * {@link jakarta.persistence.EntityManager} and resource-local transaction. The consumer must be thread-safe.
+     *
+     * @return the number of entities read.
+     */
+    long scanPartitioned(PartitionedScanConfig config, Consumer<? super T> consumer);
+
+    /**
+     * Deletes the entities of the primary keys with bulk DELETE statements, without loading them.
+     *
+     * @return the number of deleted rows.
+     */
+    int deleteByPrimaryKeys(Collection<K> primaryKeys);
+
+    /**
+     * Deletes the entities matching the predicate with a bulk DELETE statement, without loading them. Cascades and
+     * entity callbacks do not apply.
+     *
+     * @return the number of deleted rows.
+     */
+    int deleteWhere(PredicateBuilder<T> predicate);
+
     /**
      * Save or Update entity.
      */
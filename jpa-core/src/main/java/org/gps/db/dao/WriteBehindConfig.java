@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.db.dao;
+
+import lombok.Data;
+
+/**
+ * Configuration of the {@link WriteBehindQueue}.
+ */
+@Data
+public class WriteBehindConfig {
+
+    /**
+     * Maximum number of distinct primary-keys waiting to be written. Writers block once it is reached.
+     */
+    private int capacity = 10000;
+
+    /**
+     * Number of entities written per transaction. A flush starts as soon as this many are pending.
+     */
+    private int flushSize = 500;
+
+    /**
+     * Maximum time an entity waits before it is written, when fewer than {@link #flushSize} are pending.
+     */
+    private long flushIntervalMillis = 1000;
+
+    /**
+     * Maximum time a writer blocks on a full queue before its write is rejected. 0 blocks indefinitely.
+     */
+    private long offerTimeoutMillis = 30000;
+}
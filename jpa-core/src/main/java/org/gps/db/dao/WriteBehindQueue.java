@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.db.dao;
+
+import lombok.extern.slf4j.Slf4j;
+import org.gps.db.PrimaryKeyAccessor;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind front of a {@link PrimaryKeyBasedDao}: {@link #persist(Serializable)} queues the entity and returns at
+ * once, and a background thread writes the queued entities in batched transactions through
+ * {@link Dao#persist(java.util.Collection)}.
+ * <p>
+ * Writes of the same {@link org.gps.db.PrimaryKey} that are still queued coalesce: only the last state is written and
+ * all of their futures complete together. Entities without a primary-key value are never coalesced. An entity must
+ * not be modified once queued, queue a copy instead.
+ * <p>
+ * The Dao must be the Spring bean, so that its persist runs in a transaction. {@link #close()} writes the remaining
+ * entities before returning.
+ */
+@Slf4j
+public class WriteBehindQueue<K extends Serializable, T extends Serializable> implements AutoCloseable {
+
+    private final PrimaryKeyBasedDao<K, T> dao;
+
+    private final WriteBehindConfig config;
+
+    private final Map<Object, PendingWrite<T>> pending = new LinkedHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notFull = lock.newCondition();
+
+    private final Condition flushRequested = lock.newCondition();
+
+    private final Thread flusher;
+
+    private boolean flushNow;
+
+    private volatile boolean closed;
+
+    private final LongAdder coalesced = new LongAdder();
+
+    private final LongAdder written = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    public WriteBehindQueue(PrimaryKeyBasedDao<K, T> dao, WriteBehindConfig config) {
+        if (config.getCapacity() < 1 || config.getFlushSize() < 1) {
+            throw new IllegalArgumentException("capacity and flushSize must be at least 1");
+        }
+        this.dao = dao;
+        this.config = config;
+        this.flusher = new Thread(this::run, "write-behind-" + dao.getClass().getSimpleName());
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queues the entity, blocking while the queue is full.
+     *
+     * @return a future completed once the entity, or a later state of it, is committed, or completed exceptionally
+     * if the write failed or was rejected because the queue stayed full for {@link WriteBehindConfig#getOfferTimeoutMillis()}.
+     */
+    public CompletableFuture<Void> persist(T entity) {
+        Object key = dao.getContext().getPrimaryKeyValue(entity);
+        if (key == null) {
+            key = new Object();
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("WriteBehindQueue is closed.");
+            }
+            PendingWrite<T> write = pending.get(key);
+            if (write != null) {
+                write.entity = entity;
+                coalesced.increment();
+                return write.future;
+            }
+            if (!awaitCapacity()) {
+                return failedFuture(new RejectedExecutionException(String.format(
+                        "Write-behind queue full, %d entities pending.", pending.size())));
+            }
+            write = new PendingWrite<>(entity);
+            pending.put(key, write);
+            if (pending.size() >= config.getFlushSize()) {
+                flushRequested.signal();
+            }
+            return write.future;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failedFuture(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean awaitCapacity() throws InterruptedException {
+        long timeout = config.getOfferTimeoutMillis();
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (pending.size() >= config.getCapacity()) {
+            if (closed) {
+                throw new IllegalStateException("WriteBehindQueue is closed.");
+            }
+            if (timeout <= 0) {
+                notFull.await();
+            } else {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = notFull.awaitNanos(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts writing the queued entities without waiting for the flush thresholds.
+     *
+     * @return a future completed once all the entities queued so far are written.
+     */
+    public CompletableFuture<Void> flush() {
+        lock.lock();
+        try {
+            CompletableFuture<?>[] futures = pending.values().stream()
+                    .map(write -> write.future)
+                    .toArray(CompletableFuture[]::new);
+            flushNow = true;
+            flushRequested.signal();
+            return CompletableFuture.allOf(futures);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of entities waiting to be written.
+     */
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of writes absorbed by a later write of the same primary-key.
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Number of entities written.
+     */
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    /**
+     * Number of entities that could not be written.
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * Stops accepting writes and blocks until the queued entities are written. If interrupted while waiting, returns
+     * with the interrupt flag set.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            flushRequested.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<PendingWrite<T>> batch;
+        while ((batch = nextBatch()) != null) {
+            write(batch);
+        }
+    }
+
+    /**
+     * Waits for the flush thresholds and takes the oldest entities off the queue, null once closed and drained.
+     */
+    private List<PendingWrite<T>> nextBatch() {
+        lock.lock();
+        try {
+            while (true) {
+                if (pending.isEmpty()) {
+                    flushNow = false;
+                    if (closed) {
+                        return null;
+                    }
+                    flushRequested.await();
+                    continue;
+                }
+                long waited = System.nanoTime() - pending.values().iterator().next().queuedAt;
+                long remaining = TimeUnit.MILLISECONDS.toNanos(config.getFlushIntervalMillis()) - waited;
+                if (closed || flushNow || remaining <= 0 || pending.size() >= config.getFlushSize()) {
+                    break;
+                }
+                flushRequested.awaitNanos(remaining);
+            }
+            List<PendingWrite<T>> batch = new ArrayList<>(Math.min(pending.size(), config.getFlushSize()));
+            Iterator<PendingWrite<T>> iterator = pending.values().iterator();
+            while (iterator.hasNext() && batch.size() < config.getFlushSize()) {
+                batch.add(iterator.next());
+                iterator.remove();
+            }
+            notFull.signalAll();
+            return batch;
+        } catch (InterruptedException e) {
+            log.warn("Write-behind flusher interrupted, {} entities not written.", pending.size());
+            pending.values().forEach(write -> write.future.completeExceptionally(e));
+            pending.clear();
+            closed = true;
+            notFull.signalAll();
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the batch in one transaction. If that fails, writes the entities one by one, so that one bad entity
+     * does not fail the others. The primary-keys generated by a failed transaction are reset first, so a retry
+     * inserts the entity rather than merging it under a key that was rolled back.
+     */
+    private void write(List<PendingWrite<T>> batch) {
+        // Taken off the queue under the lock, so no coalescing write can replace the entities any more.
+        List<T> entities = new ArrayList<>(batch.size());
+        List<Object> keys = new ArrayList<>(batch.size());
+        for (PendingWrite<T> write : batch) {
+            entities.add(write.entity);
+            keys.add(dao.getContext().getPrimaryKeyValue(write.entity));
+        }
+        try {
+            dao.persist(entities);
+            written.add(batch.size());
+            batch.forEach(write -> write.future.complete(null));
+            return;
+        } catch (RuntimeException e) {
+            log.warn("Write-behind batch of {} entities failed, writing them one by one.", batch.size(), e);
+        } catch (Error e) {
+            // Not retried, but the futures must not be left hanging and the flusher keeps serving the queue.
+            log.error("Write-behind batch of {} entities failed.", batch.size(), e);
+            for (int i = 0; i < batch.size(); i++) {
+                resetPrimaryKey(entities.get(i), keys.get(i));
+                failed.increment();
+                batch.get(i).future.completeExceptionally(e);
+            }
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            resetPrimaryKey(entities.get(i), keys.get(i));
+            try {
+                dao.persist(entities.get(i));
+                written.increment();
+                batch.get(i).future.complete(null);
+            } catch (RuntimeException | Error e) {
+                resetPrimaryKey(entities.get(i), keys.get(i));
+                failed.increment();
+                batch.get(i).future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Puts back the primary-key value the entity was queued with, undoing an id generated by a rolled back write.
+     */
+    private void resetPrimaryKey(T entity, Object key) {
+        PrimaryKeyAccessor accessor = dao.getContext().getPrimaryKeyAccessor(entity.getClass());
+        if (accessor == null || Objects.equals(accessor.get(entity), key)) {
+            return;
+        }
+        try {
+            accessor.set(entity, key);
+        } catch (UnsupportedOperationException e) {
+            log.warn("Unable to reset the primary-key of {} after a failed write.", entity.getClass().getName(), e);
+        }
+    }
+
+    private static <V> CompletableFuture<V> failedFuture(Throwable t) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+        return future;
+    }
+
+    private static final class PendingWrite<T> {
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private final long queuedAt = System.nanoTime();
+
+        private T entity;
+
+        private PendingWrite(T entity) {
+            this.entity = entity;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.gps.db.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Registry of the {@link OperationMetrics} of the Dao operations, per entity class. Collected by the
+ * {@link DaoMetricsInterceptor}, read through JMX once {@link #registerMBeans(MBeanServer)} is called, and pushed to
+ * the {@link MetricsExporter}s on {@link #export()}.
+ */
+@Slf4j
+public class DaoMetrics implements AutoCloseable {
+
+    /**
+     * Domain of the {@link ObjectName}s of the registered MXBeans.
+     */
+    public static final String JMX_DOMAIN = "org.gps.db";
+
+    private final ConcurrentMap<Class<?>, ConcurrentMap<String, OperationMetrics>> operations =
+            new ConcurrentHashMap<>();
+
+    private final List<Consumer<OperationMetrics>> operationListeners = new CopyOnWriteArrayList<>();
+
+    private final List<MetricsExporter> exporters = new CopyOnWriteArrayList<>();
+
+    private final List<ObjectName> registeredNames = new CopyOnWriteArrayList<>();
+
+    private final Consumer<OperationMetrics> mBeanRegistrar = this::registerMBean;
+
+    private volatile MBeanServer mBeanServer;
+
+    private volatile ScheduledExecutorService exportScheduler;
+
+    /**
+     * Returns the metrics of the operation of the entity class, creating them on first use.
+     */
+    public OperationMetrics getOperation(Class<?> entityClass, String operation) {
+        ConcurrentMap<String, OperationMetrics> byOperation = operations.get(entityClass);
+        if (byOperation == null) {
+            byOperation = operations.computeIfAbsent(entityClass, type -> new ConcurrentHashMap<>());
+        }
+        OperationMetrics metrics = byOperation.get(operation);
+        return metrics != null ? metrics : createOperation(byOperation, entityClass, operation);
+    }
+
+    private synchronized OperationMetrics createOperation(ConcurrentMap<String, OperationMetrics> byOperation,
+                                                          Class<?> entityClass, String operation) {
+        OperationMetrics metrics = byOperation.get(operation);
+        if (metrics == null) {
+            metrics = new OperationMetrics(entityClass.getName(), operation);
+            byOperation.put(operation, metrics);
+            for (Consumer<OperationMetrics> listener : operationListeners) {
+                listener.accept(metrics);
+            }
+        }
+        return metrics;
+    }
+
+    public List<OperationMetrics> getOperations() {
+        List<OperationMetrics> all = new ArrayList<>();
+        operations.values().forEach(byOperation -> all.addAll(byOperation.values()));
+        return all;
+    }
+
+    /**
+     * Calls the listener for every operation already recorded and for every operation recorded from now on, e.g. to
+     * bind their metrics to a monitoring system.
+     */
+    public synchronized void addOperationListener(Consumer<OperationMetrics> listener) {
+        operationListeners.add(listener);
+        getOperations().forEach(listener);
+    }
+
+    public void removeOperationListener(Consumer<OperationMetrics> listener) {
+        operationListeners.remove(listener);
+    }
+
+    public List<OperationSnapshot> snapshot() {
+        List<OperationSnapshot> snapshots = new ArrayList<>();
+        for (OperationMetrics metrics : getOperations()) {
+            snapshots.add(metrics.snapshot());
+        }
+        return snapshots;
+    }
+
+    public void addExporter(MetricsExporter exporter) {
+        exporters.add(exporter);
+    }
+
+    public void removeExporter(MetricsExporter exporter) {
+        exporters.remove(exporter);
+    }
+
+    /**
+     * Hands a snapshot of every operation to the {@link MetricsExporter}s.
+     */
+    public void export() {
+        if (exporters.isEmpty()) {
+            return;
+        }
+        List<OperationSnapshot> snapshots = snapshot();
+        for (MetricsExporter exporter : exporters) {
+            try {
+                exporter.export(snapshots);
+            } catch (RuntimeException e) {
+                log.warn("Metrics exporter {} failed", exporter, e);
+            }
+        }
+    }
+
+    /**
+     * Calls {@link #export()} periodically from a daemon thread, until {@link #close()}.
+     */
+    public synchronized void scheduleExport(long period, TimeUnit unit) {
+        if (exportScheduler != null) {
+            exportScheduler.shutdownNow();
+        }
+        exportScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "dao-metrics-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+        exportScheduler.scheduleAtFixedRate(this::export, period, period, unit);
+    }
+
+    /**
+     * Registers an {@link OperationMetricsMXBean} for every operation, named
+     * {@code org.gps.db:type=DaoMetrics,entity=<entity class>,operation=<operation>}, including the operations
+     * recorded from now on.
+     */
+    public synchronized void registerMBeans(MBeanServer server) {
+        if (mBeanServer != null) {
+            throw new IllegalStateException("MBeans are already registered");
+        }
+        mBeanServer = server;
+        addOperationListener(mBeanRegistrar);
+    }
+
+    private void registerMBean(OperationMetrics metrics) {
+        MBeanServer server = mBeanServer;
+        if (server == null) {
+            return;
+        }
+        try {
+            ObjectName name = objectName(metrics);
+            server.registerMBean(metrics, name);
+            registeredNames.add(name);
+        } catch (InstanceAlreadyExistsException e) {
+            log.warn("MBean of {} is already registered by another DaoMetrics", metrics);
+        } catch (JMException e) {
+            log.warn("Unable to register the MBean of {}", metrics, e);
+        }
+    }
+
+    public static ObjectName objectName(OperationMetrics metrics) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=DaoMetrics,entity=" + metrics.getEntityClass() + ",operation="
+                + metrics.getOperation());
+    }
+
+    public synchronized void unregisterMBeans() {
+        MBeanServer server = mBeanServer;
+        if (server == null) {
+            return;
+        }
+        removeOperationListener(mBeanRegistrar);
+        mBeanServer = null;
+        for (ObjectName name : registeredNames) {
+            try {
+                server.unregisterMBean(name);
+            } catch (InstanceNotFoundException e) {
+                log.debug("MBean {} was already unregistered", name);
+            } catch (JMException e) {
+                log.warn("Unable to unregister MBean {}", name, e);
+            }
+        }
+        registeredNames.clear();
+    }
+
+    /**
+     * Stops the scheduled exports and unregisters the MBeans.
+     */
+    @Override
+    public synchronized void close() {
+        if (exportScheduler != null) {
+            exportScheduler.shutdownNow();
+            exportScheduler = null;
+        }
+        unregisterMBeans();
+    }
+}
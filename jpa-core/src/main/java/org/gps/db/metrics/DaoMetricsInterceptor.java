@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.gps.db.metrics;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.gps.db.cache.CachingPrimaryKeyBasedDao;
+import org.gps.db.dao.AbstractDao;
+import org.gps.db.dao.CountMode;
+import org.gps.db.dao.Dao;
+import org.gps.db.dao.KeysetPage;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.ResolvableType;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Records the latency, rows and outcome of the Dao calls it intercepts in {@link DaoMetrics}, under the entity class
+ * of the Dao and the name of the method. Overloads are told apart: {@code persist(Collection)} is recorded as
+ * {@code persistAll}, and {@code countTotal(CountMode)} as {@code countTotal.} followed by the mode, e.g.
+ * {@code countTotal.ESTIMATED}.
+ * <p>
+ * Rows are the size of the returned collection or page, the count returned by bulk deletes and scans, the size of
+ * the collection written, or 1 for a single entity read or written. Methods returning a {@link java.util.stream.Stream}
+ * are timed until the stream is returned, not while it is consumed.
+ */
+public class DaoMetricsInterceptor implements MethodInterceptor {
+
+    private final DaoMetrics metrics;
+
+    public DaoMetricsInterceptor(DaoMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        OperationMetrics operation = metrics.getOperation(entityClass(invocation.getThis()),
+                operationName(invocation.getMethod(), invocation.getArguments()));
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = invocation.proceed();
+        } catch (Throwable t) {
+            operation.record(System.nanoTime() - start, 0, true);
+            throw t;
+        }
+        operation.record(System.nanoTime() - start, rows(invocation, result), false);
+        return result;
+    }
+
+    private static Class<?> entityClass(Object target) {
+        if (target instanceof AbstractDao) {
+            return ((AbstractDao<?>) target).getEntityClass();
+        }
+        if (target instanceof CachingPrimaryKeyBasedDao) {
+            return ((CachingPrimaryKeyBasedDao<?, ?>) target).getEntityClass();
+        }
+        Class<?> targetClass = AopUtils.getTargetClass(target);
+        Class<?> entityClass = ResolvableType.forClass(targetClass).as(Dao.class).resolveGeneric(0);
+        return entityClass != null ? entityClass : targetClass;
+    }
+
+    private static String operationName(Method method, Object[] arguments) {
+        String name = method.getName();
+        if (name.equals("persist") && method.getParameterCount() == 1
+                && Collection.class.isAssignableFrom(method.getParameterTypes()[0])) {
+            return "persistAll";
+        }
+        if (name.equals("countTotal") && arguments.length == 1 && arguments[0] instanceof CountMode) {
+            return name + "." + ((CountMode) arguments[0]).name();
+        }
+        return name;
+    }
+
+    private static long rows(MethodInvocation invocation, Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Map) {
+            return ((Map<?, ?>) result).size();
+        }
+        if (result instanceof KeysetPage) {
+            return ((KeysetPage<?, ?>) result).getContent().size();
+        }
+        String name = invocation.getMethod().getName();
+        if (result instanceof Number) {
+            return name.startsWith("delete") || name.startsWith("scan") ? ((Number) result).longValue() : 0;
+        }
+        if (invocation.getMethod().getReturnType() == void.class) {
+            Object[] arguments = invocation.getArguments();
+            if (arguments.length == 1 && arguments[0] instanceof Collection) {
+                return ((Collection<?>) arguments[0]).size();
+            }
+            return name.startsWith("forEach") ? 0 : 1;
+        }
+        return result == null || result instanceof Boolean ? 0 : 1;
+    }
+}
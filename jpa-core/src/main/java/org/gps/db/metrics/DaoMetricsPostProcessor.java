@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.gps.db.metrics;
+
+import org.gps.db.dao.Dao;
+import org.gps.db.dao.PrimaryKeyBasedDao;
+import org.springframework.aop.framework.AbstractAdvisingBeanPostProcessor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+import org.springframework.core.BridgeMethodResolver;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects {@link DaoMetrics} for every method of the {@link Dao} and {@link PrimaryKeyBasedDao} interfaces called
+ * on Dao beans, by advising them with a {@link DaoMetricsInterceptor}. The advice wraps the transactional one, so the
+ * latencies include the commits.
+ * <pre>
+ * &#64;Bean
+ * public static DaoMetricsPostProcessor daoMetricsPostProcessor(DaoMetrics daoMetrics) {
+ *     return new DaoMetricsPostProcessor(daoMetrics);
+ * }
+ * </pre>
+ */
+public class DaoMetricsPostProcessor extends AbstractAdvisingBeanPostProcessor {
+
+    private static final long serialVersionUID = 1L;
+
+    private final DaoMetrics metrics;
+
+    public DaoMetricsPostProcessor(DaoMetrics metrics) {
+        this.metrics = metrics;
+        this.advisor = new DefaultPointcutAdvisor(new DaoMethodPointcut(), new DaoMetricsInterceptor(metrics));
+        setBeforeExistingAdvisors(true);
+        // Daos are usually injected by their class.
+        setProxyTargetClass(true);
+    }
+
+    public DaoMetrics getMetrics() {
+        return metrics;
+    }
+
+    private static final class DaoMethodPointcut extends StaticMethodMatcherPointcut {
+
+        private final List<Method> daoMethods = new ArrayList<>();
+
+        private DaoMethodPointcut() {
+            for (Method method : PrimaryKeyBasedDao.class.getMethods()) {
+                if (!method.getName().equals("getContext")) {
+                    daoMethods.add(method);
+                }
+            }
+        }
+
+        /**
+         * Matches the implementations of the Dao methods, but not the other overloads the target class may declare.
+         */
+        @Override
+        public boolean matches(Method method, Class<?> targetClass) {
+            if (!Dao.class.isAssignableFrom(targetClass)) {
+                return false;
+            }
+            Method implementation = implementation(method, targetClass);
+            for (Method daoMethod : daoMethods) {
+                if (daoMethod.getName().equals(method.getName())
+                        && daoMethod.getParameterCount() == method.getParameterCount()
+                        && daoMethod.getDeclaringClass().isAssignableFrom(targetClass)
+                        && implementation(daoMethod, targetClass).equals(implementation)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static Method implementation(Method method, Class<?> targetClass) {
+            return BridgeMethodResolver.findBridgedMethod(ClassUtils.getMostSpecificMethod(method, targetClass));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.gps.db.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * {@link MetricsExporter} logging one line per Dao operation that was called, at info level.
+ */
+@Slf4j
+public class LoggingMetricsExporter implements MetricsExporter {
+
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    @Override
+    public void export(List<OperationSnapshot> snapshots) {
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+        for (OperationSnapshot snapshot : snapshots) {
+            if (snapshot.getCalls() == 0) {
+                continue;
+            }
+            log.info("{}.{}: calls={} errors={} rows={} mean={}ms p50={}ms p99={}ms max={}ms",
+                    snapshot.getEntityClass(), snapshot.getOperation(), snapshot.getCalls(), snapshot.getErrors(),
+                    snapshot.getRows(), millis(snapshot.getTotalNanos() / snapshot.getCalls()),
+                    millis(snapshot.getP50Nanos()), millis(snapshot.getP99Nanos()), millis(snapshot.getMaxNanos()));
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / NANOS_PER_MILLI);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.gps.db.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Calls, errors, rows and latencies of one Dao operation of an entity class. Recording is lock-free and safe for
+ * concurrent callers.
+ */
+public final class OperationMetrics implements OperationMetricsMXBean {
+
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    private final String entityClass;
+
+    private final String operation;
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder rows = new LongAdder();
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    public OperationMetrics(String entityClass, String operation) {
+        this.entityClass = entityClass;
+        this.operation = operation;
+    }
+
+    /**
+     * Records a call that took the given time and returned or affected the given number of rows.
+     */
+    public void record(long nanos, long rowCount, boolean failed) {
+        latencies.record(nanos);
+        if (rowCount > 0) {
+            rows.add(rowCount);
+        }
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    @Override
+    public String getEntityClass() {
+        return entityClass;
+    }
+
+    @Override
+    public String getOperation() {
+        return operation;
+    }
+
+    @Override
+    public long getCalls() {
+        return latencies.getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    public long getTotalNanos() {
+        return latencies.getTotalNanos();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long calls = getCalls();
+        return calls == 0 ? 0 : getTotalNanos() / NANOS_PER_MILLI / calls;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return latencies.getMaxNanos() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return percentileNanos(0.5) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP90Millis() {
+        return percentileNanos(0.9) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return percentileNanos(0.99) / NANOS_PER_MILLI;
+    }
+
+    public long percentileNanos(double fraction) {
+        return LatencyHistogram.percentile(latencies.getBucketCounts(), latencies.getMaxNanos(), fraction);
+    }
+
+    public OperationSnapshot snapshot() {
+        long[] bucketCounts = latencies.getBucketCounts();
+        long maxNanos = latencies.getMaxNanos();
+        return new OperationSnapshot(entityClass, operation, getCalls(), getErrors(), getRows(), getTotalNanos(),
+                maxNanos, LatencyHistogram.percentile(bucketCounts, maxNanos, 0.5),
+                LatencyHistogram.percentile(bucketCounts, maxNanos, 0.9),
+                LatencyHistogram.percentile(bucketCounts, maxNanos, 0.99), bucketCounts);
+    }
+
+    @Override
+    public void reset() {
+        latencies.reset();
+        errors.reset();
+        rows.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "OperationMetrics(" + entityClass + "." + operation + ", calls=" + getCalls() + ")";
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.gps.db.metrics;
+
+import lombok.Data;
+import lombok.ToString;
+
+/**
+ * Values of the {@link OperationMetrics} of one Dao operation at a point in time, handed to the
+ * {@link MetricsExporter}s. Counts are cumulative since start or the last reset.
+ */
+@Data
+public class OperationSnapshot {
+
+    private final String entityClass;
+
+    private final String operation;
+
+    private final long calls;
+
+    private final long errors;
+
+    /**
+     * Rows returned or affected by the calls.
+     */
+    private final long rows;
+
+    private final long totalNanos;
+
+    private final long maxNanos;
+
+    private final long p50Nanos;
+
+    private final long p90Nanos;
+
+    private final long p99Nanos;
+
+    /**
+     * Counts of the {@link LatencyHistogram} buckets, see {@link LatencyHistogram#upperBound(int)}.
+     */
+    @ToString.Exclude
+    private final long[] bucketCounts;
+}
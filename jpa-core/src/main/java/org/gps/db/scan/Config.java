@@ -24,7 +24,25 @@ package org.gps.db.scan;
 
 import lombok.Data;
 
+import java.nio.file.Path;
+
 @Data
 public class Config {
     private boolean failFast;
+
+    /**
+     * Use the compile-time {@link PrimaryKeyIndex} of the jars and directories that carry one instead of walking
+     * them. Jars and directories without an index are still walked.
+     */
+    private boolean useIndex = true;
+
+    /**
+     * Opt-in persistent scan cache. When set, the result of a classpath scan is written to this file together with a
+     * fingerprint of the scanned jars and directories, and later scans read it back instead of walking the classpath
+     * as long as the fingerprint still matches. Jars or directories that contribute classes to a base package without
+     * carrying a directory entry for it are not part of the fingerprint. Directories are fingerprinted by the
+     * modification times of their subdirectories only, so a class file rewritten in place is not noticed: delete the
+     * cache file after such rebuilds.
+     */
+    private Path cacheFile;
 }
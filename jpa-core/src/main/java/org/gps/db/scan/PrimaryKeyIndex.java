@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.db.scan;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.ClassUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Compile-time index of the classes declaring a {@link org.gps.db.PrimaryKey} field.
+ * <p>
+ * The index is written by the {@code jpa-indexer} annotation processor to {@link #INDEX_LOCATION}, one
+ * {@code className=fieldName} entry per line. Each jar or output directory carries its own index file; all of them
+ * are merged when loaded.
+ */
+@Slf4j
+public class PrimaryKeyIndex {
+
+    /**
+     * Classpath location of the index files.
+     */
+    public static final String INDEX_LOCATION = "META-INF/jpa-utils.primarykeys";
+
+    private final Set<String> classNames;
+
+    PrimaryKeyIndex(Set<String> classNames) {
+        this.classNames = Collections.unmodifiableSet(classNames);
+    }
+
+    /**
+     * Loads and merges every index file visible to the classLoader.
+     *
+     * @return the index, or null when no index file is present.
+     */
+    public static PrimaryKeyIndex load(ClassLoader classLoader) throws IOException {
+        Enumeration<URL> urls = classLoader.getResources(INDEX_LOCATION);
+        if (!urls.hasMoreElements()) {
+            return null;
+        }
+        return load(Collections.list(urls));
+    }
+
+    /**
+     * Loads and merges the given index files.
+     */
+    public static PrimaryKeyIndex load(Collection<URL> urls) throws IOException {
+        Set<String> classNames = new LinkedHashSet<>();
+        for (URL url : urls) {
+            log.debug("Loading PrimaryKey index from {}", url);
+            try (InputStream in = url.openStream();
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    int separator = line.indexOf('=');
+                    classNames.add(separator < 0 ? line : line.substring(0, separator));
+                }
+            }
+        }
+        return new PrimaryKeyIndex(classNames);
+    }
+
+    /**
+     * Returns the names of the indexed classes.
+     */
+    public Set<String> getClassNames() {
+        return classNames;
+    }
+
+    /**
+     * Loads the indexed classes that belong to one of the basePackages (or their sub-packages).
+     * Entries whose class can no longer be found are skipped.
+     */
+    public Set<Class<?>> getClasses(ClassLoader classLoader, String... basePackages) {
+        Set<Class<?>> classes = new HashSet<>();
+        for (String className : classNames) {
+            if (!isInPackage(className, basePackages)) {
+                continue;
+            }
+            try {
+                classes.add(ClassUtils.forName(className, classLoader));
+            } catch (ClassNotFoundException | LinkageError e) {
+                log.warn("Skipping stale PrimaryKey index entry {}: {}", className, e.toString());
+            }
+        }
+        return classes;
+    }
+
+    private static boolean isInPackage(String className, String... basePackages) {
+        for (String basePackage : basePackages) {
+            if (className.startsWith(basePackage + '.')) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.db.scan;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ResourceUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Persistent cache of a scan result, keyed by a fingerprint of the scanned jars and directories.
+ * <p>
+ * The fingerprint covers the path, size and modification time of every jar, and of every directory under the
+ * directories, that contribute to the scanned base packages. Files are not visited, so a directory is seen as changed
+ * when entries are added, removed or renamed in it; a class file rewritten in place goes unnoticed unless the field it
+ * was cached with is gone. The cache file holds the fingerprint followed by the {@code className -> fieldName}
+ * entries.
+ */
+@Slf4j
+final class ScanCache {
+
+    private static final int MAGIC = 0x4A505543;
+
+    private static final int VERSION = 1;
+
+    private static final int FINGERPRINT_LENGTH = 32;
+
+    private ScanCache() {
+    }
+
+    /**
+     * Computes the fingerprint of the roots that contribute to the basePackages.
+     *
+     * @return the fingerprint, or null if one of the roots is neither a jar nor a directory on the file system.
+     */
+    static byte[] fingerprint(Resource[] roots, String... basePackages) throws IOException {
+        Map<String, String> entries = new TreeMap<>();
+        for (Resource root : roots) {
+            URL url = root.getURL();
+            File file;
+            try {
+                file = ResourceUtils.isJarURL(url)
+                        ? ResourceUtils.getFile(ResourceUtils.extractArchiveURL(url))
+                        : ResourceUtils.getFile(url);
+            } catch (IOException e) {
+                log.debug("Unable to fingerprint {}, scan cache disabled: {}", url, e.toString());
+                return null;
+            }
+            if (file.isDirectory()) {
+                Files.walkFileTree(file.toPath(), new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                        entries.put(dir.toAbsolutePath().toString(),
+                                attributes.size() + ":" + attributes.lastModifiedTime().toMillis());
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } else {
+                entries.put(file.getAbsolutePath(), file.length() + ":" + file.lastModified());
+            }
+        }
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(String.join(",", basePackages).getBytes(StandardCharsets.UTF_8));
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update(entry.getValue().getBytes(StandardCharsets.UTF_8));
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Reads the cache file.
+     *
+     * @return the cached mapping, or null if the file is missing, unreadable, was written for another fingerprint
+     * or refers to classes and fields that no longer exist.
+     */
+    static Map<String, Field> read(Path cacheFile, byte[] fingerprint, ClassLoader classLoader) {
+        if (!Files.isRegularFile(cacheFile)) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(cacheFile));
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            byte[] cachedFingerprint = new byte[FINGERPRINT_LENGTH];
+            buffer.get(cachedFingerprint);
+            if (!Arrays.equals(fingerprint, cachedFingerprint)) {
+                log.debug("Scan cache {} is stale.", cacheFile);
+                return null;
+            }
+            int count = buffer.getInt();
+            Map<String, Field> cache = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String className = readString(buffer);
+                String fieldName = readString(buffer);
+                Class<?> clazz = ClassUtils.forName(className, classLoader);
+                cache.put(className, clazz.getDeclaredField(fieldName));
+            }
+            return cache;
+        } catch (IOException | RuntimeException | ClassNotFoundException | NoSuchFieldException | LinkageError e) {
+            log.warn("Ignoring unusable scan cache {}: {}", cacheFile, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the cache file. The file is replaced atomically, failures are logged and otherwise ignored.
+     */
+    static void write(Path cacheFile, byte[] fingerprint, Map<String, Field> cache) {
+        try {
+            Path parent = cacheFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, cacheFile.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp);
+                 DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out))) {
+                data.writeInt(MAGIC);
+                data.writeInt(VERSION);
+                data.write(fingerprint);
+                data.writeInt(cache.size());
+                for (Map.Entry<String, Field> entry : cache.entrySet()) {
+                    writeString(data, entry.getKey());
+                    writeString(data, entry.getValue().getName());
+                }
+            }
+            Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Unable to write scan cache {}: {}", cacheFile, e.toString());
+        }
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        data.writeShort(bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
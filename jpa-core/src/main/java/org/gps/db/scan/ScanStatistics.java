@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.db.scan;
+
+import lombok.Data;
+
+/**
+ * Statistics of a {@link Scanner#scan(String...)} run.
+ */
+@Data
+public class ScanStatistics {
+
+    /**
+     * Where the scanned classes were resolved from.
+     */
+    public enum Source {
+        /**
+         * Nothing was scanned.
+         */
+        NONE,
+        /**
+         * The compile-time {@link PrimaryKeyIndex}.
+         */
+        INDEX,
+        /**
+         * The persistent scan cache configured through {@link Config#getCacheFile()}.
+         */
+        CACHE,
+        /**
+         * The classpath walk.
+         */
+        CLASSPATH
+    }
+
+    private Source source = Source.NONE;
+
+    /**
+     * Wall-clock time of the scan in milliseconds.
+     */
+    private long scanTimeMillis;
+
+    /**
+     * Number of class files read from the classpath.
+     */
+    private int resourcesScanned;
+
+    /**
+     * Number of classes loaded.
+     */
+    private int classesLoaded;
+
+    /**
+     * Number of entity classes with a {@link org.gps.db.PrimaryKey}.
+     */
+    private int primaryKeysFound;
+}
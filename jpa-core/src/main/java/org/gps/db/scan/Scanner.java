@@ -25,18 +25,27 @@ package org.gps.db.scan;
 import lombok.extern.slf4j.Slf4j;
 import org.gps.db.Context;
 import org.gps.db.PrimaryKey;
-import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.asm.AnnotationVisitor;
+import org.springframework.asm.ClassReader;
+import org.springframework.asm.ClassVisitor;
+import org.springframework.asm.FieldVisitor;
+import org.springframework.asm.SpringAsmInfo;
+import org.springframework.asm.Type;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.core.io.support.ResourcePatternResolver;
-import org.springframework.core.type.classreading.CachingMetadataReaderFactory;
-import org.springframework.core.type.classreading.MetadataReader;
 import org.springframework.stereotype.Component;
 import org.springframework.util.ClassUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Field;
+import java.net.URL;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 @Component
 @Slf4j
@@ -44,6 +53,8 @@ public class Scanner {
 
     private static final String DEFAULT_RESOURCE_PATTERN = "**/*.class";
 
+    private static final String PRIMARY_KEY_DESCRIPTOR = Type.getDescriptor(PrimaryKey.class);
+
     private final ResourcePatternResolver resourcePatternResolver = new PathMatchingResourcePatternResolver();
 
     private final Config config;
@@ -62,8 +73,59 @@ public class Scanner {
             return new Context(Collections.EMPTY_MAP);
         }
 
+        long start = System.nanoTime();
+        ScanStatistics statistics = new ScanStatistics();
+        Map<String, Field> cache = null;
+        List<Resource> unindexedRoots = new ArrayList<>();
+        Set<Class<?>> classes = getClassesFromIndex(unindexedRoots, basePackages);
+        if (classes != null) {
+            if (unindexedRoots.isEmpty()) {
+                statistics.setSource(ScanStatistics.Source.INDEX);
+            } else {
+                // Jars and directories without an index are still walked.
+                AtomicInteger resourcesScanned = new AtomicInteger();
+                classes = new HashSet<>(classes);
+                classes.addAll(getClassesFromRoots(resourcesScanned, unindexedRoots));
+                statistics.setSource(ScanStatistics.Source.CLASSPATH);
+                statistics.setResourcesScanned(resourcesScanned.get());
+            }
+            cache = getPrimaryKeyFields(classes);
+        } else {
+            byte[] fingerprint = null;
+            if (config.getCacheFile() != null) {
+                fingerprint = ScanCache.fingerprint(getRoots(basePackages), basePackages);
+                if (fingerprint != null) {
+                    cache = ScanCache.read(config.getCacheFile(), fingerprint, ClassUtils.getDefaultClassLoader());
+                }
+            }
+            if (cache != null) {
+                statistics.setSource(ScanStatistics.Source.CACHE);
+                statistics.setClassesLoaded(cache.size());
+            } else {
+                AtomicInteger resourcesScanned = new AtomicInteger();
+                classes = getPrimaryKeyClassesFromPackage(resourcesScanned, basePackages);
+                statistics.setSource(ScanStatistics.Source.CLASSPATH);
+                statistics.setResourcesScanned(resourcesScanned.get());
+                cache = getPrimaryKeyFields(classes);
+                if (fingerprint != null) {
+                    ScanCache.write(config.getCacheFile(), fingerprint, cache);
+                }
+            }
+        }
+        if (classes != null) {
+            statistics.setClassesLoaded(classes.size());
+        }
+        statistics.setPrimaryKeysFound(cache.size());
+        statistics.setScanTimeMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        log.debug("Scanned {}: {}", Arrays.toString(basePackages), statistics);
+
+        Context context = new Context(cache);
+        context.setStatistics(statistics);
+        return context;
+    }
+
+    private Map<String, Field> getPrimaryKeyFields(Set<Class<?>> classes) {
         Map<String, Field> cache = new HashMap<>();
-        Set<Class<?>> classes = getClassesFromPackage(basePackages);
         for (Class<?> clazz : classes) {
             Field[] fields = clazz.getDeclaredFields();
             List<Field> pkFields = new ArrayList<>();
@@ -80,31 +142,211 @@ public class Scanner {
                 log.warn("Warning: Class {} has more than one PrimaryKey annotated field.", clazz.getName());
             }
         }
+        return cache;
+    }
+
+    /**
+     * Resolves the jars and directories that contain the basePackages.
+     */
+    private Resource[] getRoots(String... basePackages) throws IOException {
+        List<Resource> roots = new ArrayList<>();
+        for (String basePackage : basePackages) {
+            roots.addAll(Arrays.asList(resourcePatternResolver.getResources(
+                    ResourcePatternResolver.CLASSPATH_ALL_URL_PREFIX + resolveBasePackage(basePackage))));
+        }
+        return roots.toArray(new Resource[0]);
+    }
+
+    /**
+     * Resolves the classes from the compile-time {@link PrimaryKeyIndex} of the jars and directories that contain the
+     * basePackages and carry an index. Classes of the jars and directories without an index are not included.
+     *
+     * @return the indexed classes, or null if the index is disabled or no index is present.
+     */
+    public Set<Class<?>> getClassesFromIndex(String... basePackages) throws IOException {
+        return getClassesFromIndex(null, basePackages);
+    }
+
+    /**
+     * @param unindexedRoots collects the jars and directories that contain the basePackages without an index, if
+     *                       not null.
+     */
+    private Set<Class<?>> getClassesFromIndex(List<Resource> unindexedRoots, String... basePackages)
+            throws IOException {
+        if (!config.isUseIndex()) {
+            return null;
+        }
+        Set<URL> indexes = new LinkedHashSet<>();
+        List<Resource> unindexed = new ArrayList<>();
+        for (String basePackage : basePackages) {
+            String packagePath = resolveBasePackage(basePackage);
+            for (Resource root : resourcePatternResolver.getResources(
+                    ResourcePatternResolver.CLASSPATH_ALL_URL_PREFIX + packagePath)) {
+                URL index = getIndex(root, packagePath);
+                if (index != null) {
+                    indexes.add(index);
+                } else {
+                    unindexed.add(root);
+                }
+            }
+        }
+        if (indexes.isEmpty()) {
+            return null;
+        }
+        if (unindexedRoots != null) {
+            unindexedRoots.addAll(unindexed);
+        }
+        PrimaryKeyIndex index = PrimaryKeyIndex.load(indexes);
+        log.debug("Using PrimaryKey index of {} roots with {} entries, {} roots without index.", indexes.size(),
+                index.getClassNames().size(), unindexed.size());
+        return index.getClasses(ClassUtils.getDefaultClassLoader(), basePackages);
+    }
 
-        return new Context(cache);
+    /**
+     * Returns the index file of the jar or directory the package root belongs to, or null if it has none.
+     */
+    private URL getIndex(Resource root, String packagePath) throws IOException {
+        String url = stripTrailingSlash(root.getURL().toString());
+        if (!url.endsWith(packagePath)) {
+            return null;
+        }
+        String base = url.substring(0, url.length() - packagePath.length());
+        Resource index = resourcePatternResolver.getResource(base + PrimaryKeyIndex.INDEX_LOCATION);
+        return index.exists() ? index.getURL() : null;
     }
 
+    private static String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    /**
+     * Walks the class files under the basePackages and loads all of their classes.
+     */
     public Set<Class<?>> getClassesFromPackage(String... basePackages) throws IOException, ClassNotFoundException {
-        ClassPathScanningCandidateComponentProvider scanner =
-                new ClassPathScanningCandidateComponentProvider(false);
-        scanner.setMetadataReaderFactory(new CachingMetadataReaderFactory());
+        return getClasses(new AtomicInteger(), getPatterns(basePackages), false);
+    }
+
+    /**
+     * Walks the class files under the basePackages and loads the classes declaring a {@link PrimaryKey} field.
+     * <p>
+     * Class files are inspected through their bytecode first, so classes without a {@link PrimaryKey} are never
+     * loaded, and matching classes are loaded without being initialized. Base packages and class files are
+     * processed in parallel.
+     */
+    public Set<Class<?>> getPrimaryKeyClassesFromPackage(String... basePackages)
+            throws IOException, ClassNotFoundException {
+        return getPrimaryKeyClassesFromPackage(new AtomicInteger(), basePackages);
+    }
+
+    private Set<Class<?>> getPrimaryKeyClassesFromPackage(AtomicInteger resourcesScanned, String... basePackages)
+            throws IOException, ClassNotFoundException {
+        return getClasses(resourcesScanned, getPatterns(basePackages), true);
+    }
+
+    private static List<String> getPatterns(String... basePackages) {
+        return Arrays.stream(basePackages)
+                .map(basePackage -> ResourcePatternResolver.CLASSPATH_ALL_URL_PREFIX +
+                        resolveBasePackage(basePackage) + '/' + DEFAULT_RESOURCE_PATTERN)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Walks the class files under the given package roots, see {@link #getPrimaryKeyClassesFromPackage(String...)}.
+     */
+    private Set<Class<?>> getClassesFromRoots(AtomicInteger resourcesScanned, List<Resource> roots)
+            throws IOException, ClassNotFoundException {
+        List<String> patterns = new ArrayList<>();
+        for (Resource root : roots) {
+            patterns.add(stripTrailingSlash(root.getURL().toString()) + '/' + DEFAULT_RESOURCE_PATTERN);
+        }
+        return getClasses(resourcesScanned, patterns, true);
+    }
 
+    /**
+     * @param primaryKeyOnly loads only the classes declaring a {@link PrimaryKey} field when true.
+     */
+    private Set<Class<?>> getClasses(AtomicInteger resourcesScanned, List<String> patterns, boolean primaryKeyOnly)
+            throws IOException, ClassNotFoundException {
+        Set<String> classNames;
+        try {
+            List<Resource> resources = patterns.parallelStream()
+                    .flatMap(pattern -> Arrays.stream(getResources(pattern)))
+                    .collect(Collectors.toList());
+            resourcesScanned.addAndGet(resources.size());
+            classNames = resources.parallelStream()
+                    .map(resource -> getClassName(resource, primaryKeyOnly))
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
         Set<Class<?>> classes = new HashSet<>();
-        for (String basePackage: basePackages) {
-            String packageSearchPath = ResourcePatternResolver.CLASSPATH_ALL_URL_PREFIX +
-                    resolveBasePackage(basePackage) + '/' + DEFAULT_RESOURCE_PATTERN;
-            Resource[] resources = resourcePatternResolver.getResources(packageSearchPath);
-            for (Resource resource: resources) {
-                MetadataReader reader = scanner.getMetadataReaderFactory().getMetadataReader(resource);
-                String className = reader.getClassMetadata().getClassName();
-                Class<?> clazz = Class.forName(className);
-                classes.add(clazz);
-            }
+        for (String className : classNames) {
+            classes.add(ClassUtils.forName(className, classLoader));
         }
         return classes;
     }
 
+    private Resource[] getResources(String pattern) {
+        try {
+            return resourcePatternResolver.getResources(pattern);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads the class file and returns its class name, or null if primaryKeyOnly and it declares no
+     * {@link PrimaryKey} field.
+     */
+    private static String getClassName(Resource resource, boolean primaryKeyOnly) {
+        try (InputStream in = resource.getInputStream()) {
+            PrimaryKeyClassVisitor visitor = new PrimaryKeyClassVisitor();
+            new ClassReader(in).accept(visitor, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            return visitor.primaryKey || !primaryKeyOnly ? visitor.className : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     private static String resolveBasePackage(String basePackage) {
         return ClassUtils.convertClassNameToResourcePath(basePackage);
     }
+
+    /**
+     * Detects {@link PrimaryKey} annotated fields without loading the class.
+     */
+    private static class PrimaryKeyClassVisitor extends ClassVisitor {
+
+        private String className;
+
+        private boolean primaryKey;
+
+        private final FieldVisitor fieldVisitor = new FieldVisitor(SpringAsmInfo.ASM_VERSION) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                if (PRIMARY_KEY_DESCRIPTOR.equals(descriptor)) {
+                    primaryKey = true;
+                }
+                return null;
+            }
+        };
+
+        PrimaryKeyClassVisitor() {
+            super(SpringAsmInfo.ASM_VERSION);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName,
+                          String[] interfaces) {
+            className = ClassUtils.convertResourcePathToClassName(name);
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+            return primaryKey ? null : fieldVisitor;
+        }
+    }
 }
@@ -25,15 +25,31 @@ package org.gps.db.test;
 import lombok.Data;
 import org.gps.db.Context;
 import org.gps.db.PrimaryKey;
+import org.gps.db.PrimaryKeyAccessor;
+import org.gps.db.scan.Config;
+import org.gps.db.scan.PrimaryKeyIndex;
+import org.gps.db.scan.ScanStatistics;
 import org.gps.db.scan.Scanner;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
 
 public class ScannerTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
     public void testScan() throws IOException, ClassNotFoundException {
         Context context = new Scanner().scan("org.gps.db.test");
@@ -46,6 +62,99 @@ public class ScannerTest {
         Object value = context.getPrimaryKeyValue(entity);
         Assert.assertEquals(1234L, value);
     }
+
+    @Test
+    public void testPrimaryKeyAccessor() throws IOException, ClassNotFoundException {
+        Context context = new Scanner().scan("org.gps.db.test");
+
+        PrimitiveKeyEntity entity = new PrimitiveKeyEntity();
+        entity.setId(42);
+        PrimaryKeyAccessor accessor = context.getPrimaryKeyAccessor(PrimitiveKeyEntity.class);
+        Assert.assertNotNull(accessor);
+        Assert.assertTrue(accessor.isIntegral());
+        Assert.assertEquals(42L, accessor.getAsLong(entity));
+        Object value = context.getPrimaryKeyValue(entity);
+        Assert.assertEquals(42, value);
+
+        accessor.set(entity, 7);
+        Assert.assertEquals(7, entity.getId());
+    }
+
+    @Test
+    public void testSubclassResolvesToSuperclassPrimaryKey() throws IOException, ClassNotFoundException {
+        Context context = new Scanner().scan("org.gps.db.test");
+
+        MyEntity proxyLike = new MyEntity() {
+        };
+        proxyLike.setId(99L);
+        Object value = context.getPrimaryKeyValue(proxyLike);
+        Assert.assertEquals(99L, value);
+        Assert.assertEquals(context.getPrimaryKeyField(MyEntity.class),
+                context.getPrimaryKeyAccessor(proxyLike.getClass()).getField());
+        Assert.assertNull(context.getPrimaryKeyAccessor(String.class));
+    }
+
+    @Test
+    public void testScanStatistics() throws IOException, ClassNotFoundException {
+        Context context = new Scanner().scan("org.gps.db.test");
+        ScanStatistics statistics = context.getStatistics();
+        Assert.assertNotNull(statistics);
+        Assert.assertEquals(ScanStatistics.Source.CLASSPATH, statistics.getSource());
+        Assert.assertEquals(context.getCache().size(), statistics.getPrimaryKeysFound());
+        // Only classes declaring a @PrimaryKey are loaded, ScannerTest itself is not.
+        Assert.assertEquals(statistics.getPrimaryKeysFound(), statistics.getClassesLoaded());
+        Assert.assertTrue(statistics.getResourcesScanned() > statistics.getClassesLoaded());
+    }
+
+    @Test
+    public void testGetClassesFromPackage() throws IOException, ClassNotFoundException {
+        Scanner scanner = new Scanner();
+        Set<Class<?>> classes = scanner.getClassesFromPackage("org.gps.db.test");
+        Assert.assertTrue(classes.contains(ScannerTest.class));
+        Assert.assertTrue(classes.contains(MyEntity.class));
+
+        Set<Class<?>> primaryKeyClasses = scanner.getPrimaryKeyClassesFromPackage("org.gps.db.test");
+        Assert.assertFalse(primaryKeyClasses.contains(ScannerTest.class));
+        Assert.assertTrue(primaryKeyClasses.contains(MyEntity.class));
+    }
+
+    @Test
+    public void testScanCache() throws IOException, ClassNotFoundException {
+        Config config = new Config();
+        config.setCacheFile(temporaryFolder.getRoot().toPath().resolve("scan.cache"));
+
+        Context scanned = new Scanner(config).scan("org.gps.db.test");
+        Assert.assertEquals(ScanStatistics.Source.CLASSPATH, scanned.getStatistics().getSource());
+
+        Context cached = new Scanner(config).scan("org.gps.db.test");
+        Assert.assertEquals(ScanStatistics.Source.CACHE, cached.getStatistics().getSource());
+        Assert.assertEquals(scanned.getCache(), cached.getCache());
+
+        Context otherPackages = new Scanner(config).scan("org.gps.db.test.entity");
+        Assert.assertEquals(ScanStatistics.Source.CLASSPATH, otherPackages.getStatistics().getSource());
+    }
+
+    @Test
+    public void testScanIndexedAndUnindexedRoots() throws IOException, ClassNotFoundException {
+        File root = temporaryFolder.newFolder("indexed");
+        Files.createDirectories(root.toPath().resolve("org/gps/db/test"));
+        Path index = root.toPath().resolve(PrimaryKeyIndex.INDEX_LOCATION);
+        Files.createDirectories(index.getParent());
+        Files.write(index, Collections.singletonList(PrimitiveKeyEntity.class.getName() + "=id"));
+
+        Thread thread = Thread.currentThread();
+        ClassLoader previous = thread.getContextClassLoader();
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{root.toURI().toURL()}, previous)) {
+            thread.setContextClassLoader(classLoader);
+            Context context = new Scanner().scan("org.gps.db.test");
+            Assert.assertTrue(context.getCache().containsKey(PrimitiveKeyEntity.class.getName()));
+            // The test classes directory has no index, it is still walked.
+            Assert.assertTrue(context.getCache().containsKey(MyEntity.class.getName()));
+            Assert.assertEquals(ScanStatistics.Source.CLASSPATH, context.getStatistics().getSource());
+        } finally {
+            thread.setContextClassLoader(previous);
+        }
+    }
 }
 
 @Data
@@ -53,4 +162,10 @@ class MyEntity implements Serializable {
 
     @PrimaryKey
     private Long id;
-}
\ No newline at end of file
+}
+@Data
+class PrimitiveKeyEntity implements Serializable {
+
+    @PrimaryKey
+    private int id;
+}
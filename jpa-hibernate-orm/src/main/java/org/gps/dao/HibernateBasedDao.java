@@ -30,6 +30,7 @@ import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.Serializable;
+import java.util.Collection;
 
 /**
  * {@link HibernateBasedDao} provides Hibernate based JPA capabilities on {@link AbstractDao}
@@ -48,4 +49,30 @@ public abstract class HibernateBasedDao<T extends Serializable> extends Abstract
     public Session getSession() {
         return getEntityManager().unwrap(Session.class);
     }
+
+    /**
+     * Caps the IN list size to the limit of the Hibernate {@link org.hibernate.dialect.Dialect}.
+     */
+    @Override
+    public int getInClauseLimit() {
+        return HibernateSupport.getInClauseLimit(getEntityManager().getEntityManagerFactory(),
+                super.getInClauseLimit());
+    }
+
+    /**
+     * Reads the estimate from the catalog statistics of the database, where the dialect supports it.
+     */
+    @Override
+    protected Long estimateCount() {
+        return HibernateSupport.estimateRowCount(getSession(), getEntityClass());
+    }
+
+    /**
+     * Persists the entities as JDBC batches of {@link #getBatchSize()} statements.
+     */
+    @Transactional
+    @Override
+    public void persist(Collection<T> tCollection) {
+        HibernateSupport.withJdbcBatchSize(getSession(), getBatchSize(), () -> super.persist(tCollection));
+    }
 }
@@ -25,11 +25,21 @@ package org.gps.dao;
 import org.gps.db.Context;
 import org.gps.db.dao.AbstractPrimaryKeyBasedDao;
 import org.hibernate.Session;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.EntityKey;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.entity.EntityPersister;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 /**
  * {@link HibernatePrimaryKeyBasedDao} provides Hibernate based JPA capabilities on {@link AbstractPrimaryKeyBasedDao}
@@ -38,6 +48,8 @@ import java.io.Serializable;
 public abstract class HibernatePrimaryKeyBasedDao<K extends Serializable, T extends Serializable>
         extends AbstractPrimaryKeyBasedDao<K, T> {
 
+    private volatile Optional<UpsertStatement> upsertStatement;
+
     public HibernatePrimaryKeyBasedDao(Context context) {
         super(context);
     }
@@ -49,4 +61,166 @@ public abstract class HibernatePrimaryKeyBasedDao<K extends Serializable, T exte
     public Session getSession() {
         return getEntityManager().unwrap(Session.class);
     }
+
+    /**
+     * Caps the IN list size to the limit of the Hibernate {@link org.hibernate.dialect.Dialect}.
+     */
+    @Override
+    public int getInClauseLimit() {
+        return HibernateSupport.getInClauseLimit(getEntityManager().getEntityManagerFactory(),
+                super.getInClauseLimit());
+    }
+
+    /**
+     * Reads the estimate from the catalog statistics of the database, where the dialect supports it.
+     */
+    @Override
+    protected Long estimateCount() {
+        return HibernateSupport.estimateRowCount(getSession(), getEntityClass());
+    }
+
+    /**
+     * Persists the entities as JDBC batches of {@link #getBatchSize()} statements.
+     */
+    @Transactional
+    @Override
+    public void persist(Collection<T> tCollection) {
+        HibernateSupport.withJdbcBatchSize(getSession(), getBatchSize(), () -> super.persist(tCollection));
+    }
+
+    /**
+     * Uses the unsaved-value semantics of the Hibernate {@link EntityPersister} (id, version and second-level cache),
+     * falling back to the JPA metamodel based checks when Hibernate cannot tell either.
+     */
+    @Override
+    protected Boolean isTransient(T entity) {
+        SharedSessionContractImplementor session = getSession().unwrap(SharedSessionContractImplementor.class);
+        EntityPersister persister = session.getFactory().getMappingMetamodel()
+                .getEntityDescriptor(entity.getClass());
+        Boolean isTransient = persister.isTransient(entity, session);
+        return isTransient != null ? isTransient : super.isTransient(entity);
+    }
+
+    /**
+     * Loads the entities with {@link Session#byMultipleIds(Class)} in batches of {@link #getInClauseLimit()} keys.
+     * Entities already in the session are taken from it instead of the database.
+     */
+    @Transactional(readOnly = true)
+    @Override
+    public List<T> findByPrimaryKeys(Collection<K> primaryKeys) {
+        List<K> keys = new ArrayList<>(primaryKeys.size());
+        for (K key : primaryKeys) {
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+        List<T> loaded = keys.isEmpty() ? new ArrayList<>() : getSession().byMultipleIds(getEntityClass())
+                .withBatchSize(getInClauseLimit())
+                .enableSessionCheck(true)
+                .enableOrderedReturn(true)
+                .multiLoad(keys);
+        if (keys.size() == primaryKeys.size()) {
+            return loaded;
+        }
+        // Put the nulls of the null keys back.
+        List<T> result = new ArrayList<>(primaryKeys.size());
+        int index = 0;
+        for (K key : primaryKeys) {
+            result.add(key == null ? null : loaded.get(index++));
+        }
+        return result;
+    }
+
+    /**
+     * Inserts or updates the entities with native, batched {@code MERGE} / {@code ON CONFLICT} /
+     * {@code ON DUPLICATE KEY UPDATE} statements keyed on the id, instead of a lookup and a merge per entity.
+     * <p>
+     * Entities that are new by the unsaved-value semantics of {@link #isTransient(Serializable)}, e.g. without an id
+     * or with the 0 id of a primitive generated id, are persisted. Dialects or mappings without upsert support fall
+     * back to {@link #persist(Collection)}. The upserted rows bypass the persistence context: managed instances of
+     * them are detached and evicted from the second-level cache, so that later reads see the written state.
+     * <p>
+     * An entity with an {@code IDENTITY} id that is set but has no row is inserted with that explicit id, which does
+     * not move the identity sequence of the database on: later generated inserts may then collide with it. Only pass
+     * such entities with ids that were generated by the database.
+     */
+    @Transactional
+    public void upsertAll(Collection<T> entities) {
+        if (entities.isEmpty()) {
+            return;
+        }
+        SharedSessionContractImplementor session = getSession().unwrap(SharedSessionContractImplementor.class);
+        EntityPersister persister = session.getFactory().getMappingMetamodel().getEntityDescriptor(getEntityClass());
+        UpsertStatement upsert = getUpsertStatement(persister);
+        if (upsert == null) {
+            persist(entities);
+            return;
+        }
+        List<T> withId = new ArrayList<>();
+        List<T> withoutId = new ArrayList<>();
+        for (T entity : entities) {
+            boolean isNew = persister.getIdentifier(entity, session) == null
+                    || Boolean.TRUE.equals(isTransient(entity));
+            (isNew ? withoutId : withId).add(entity);
+        }
+        if (!withoutId.isEmpty()) {
+            persist(withoutId);
+        }
+        if (withId.isEmpty()) {
+            return;
+        }
+        // Pending changes to the same rows must not be flushed over the upserted state later.
+        getSession().flush();
+        session.doWork(connection -> upsert.execute(connection, withId, session, getBatchSize()));
+        for (T entity : withId) {
+            Object id = persister.getIdentifier(entity, session);
+            Object managed = session.getPersistenceContextInternal().getEntity(new EntityKey(id, persister));
+            if (managed != null) {
+                getSession().detach(managed);
+            }
+            session.getFactory().getCache().evictEntityData(getEntityClass(), id);
+            addToExistenceFilter(entity);
+        }
+        recordChanges(changes -> withId.forEach(entity -> changes.upserted(persister.getIdentifier(entity, session))));
+    }
+
+    private UpsertStatement getUpsertStatement(EntityPersister persister) {
+        Optional<UpsertStatement> statement = upsertStatement;
+        if (statement == null) {
+            statement = Optional.ofNullable(UpsertStatement.of(persister,
+                    HibernateSupport.getDialect(getEntityManager().getEntityManagerFactory())));
+            upsertStatement = statement;
+        }
+        return statement.orElse(null);
+    }
+
+    /**
+     * Detaches only the deleted instances, or all the instances of the entity class when the deleted keys are not
+     * known, and evicts them from the second-level cache.
+     */
+    @Override
+    protected void evictDeleted(Collection<K> primaryKeys) {
+        SharedSessionContractImplementor session = getSession().unwrap(SharedSessionContractImplementor.class);
+        PersistenceContext persistenceContext = session.getPersistenceContextInternal();
+        if (primaryKeys == null) {
+            for (Map.Entry<Object, EntityEntry> entry : persistenceContext.reentrantSafeEntityEntries()) {
+                if (getEntityClass().isInstance(entry.getKey())) {
+                    getSession().detach(entry.getKey());
+                }
+            }
+            session.getFactory().getCache().evictEntityData(getEntityClass());
+            return;
+        }
+        EntityPersister persister = session.getFactory().getMappingMetamodel().getEntityDescriptor(getEntityClass());
+        for (K primaryKey : primaryKeys) {
+            if (primaryKey == null) {
+                continue;
+            }
+            Object managed = persistenceContext.getEntity(new EntityKey(primaryKey, persister));
+            if (managed != null) {
+                getSession().detach(managed);
+            }
+            session.getFactory().getCache().evictEntityData(getEntityClass(), primaryKey);
+        }
+    }
 }
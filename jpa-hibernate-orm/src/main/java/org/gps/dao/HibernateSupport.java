@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.dao;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Query;
+import org.hibernate.Session;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.util.List;
+
+/**
+ * Hibernate specifics shared by the Hibernate based DAOs.
+ */
+final class HibernateSupport {
+
+    private HibernateSupport() {
+    }
+
+    /**
+     * Returns the {@link SessionFactoryImplementor} behind the {@link EntityManagerFactory}.
+     */
+    static SessionFactoryImplementor getSessionFactory(EntityManagerFactory entityManagerFactory) {
+        return entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+    }
+
+    /**
+     * Returns the {@link Dialect} of the {@link EntityManagerFactory}.
+     */
+    static Dialect getDialect(EntityManagerFactory entityManagerFactory) {
+        return getSessionFactory(entityManagerFactory).getJdbcServices().getDialect();
+    }
+
+    /**
+     * Caps the configured IN list size to the limit of the dialect, if it has one.
+     */
+    static int getInClauseLimit(EntityManagerFactory entityManagerFactory, int configured) {
+        int limit = getDialect(entityManagerFactory).getInExpressionCountLimit();
+        if (limit > 0 && (configured <= 0 || limit < configured)) {
+            return limit;
+        }
+        return configured;
+    }
+
+    /**
+     * Runs the action with the JDBC batch size of the session set to batchSize, so that the inserts and updates it
+     * flushes are sent as JDBC batches. Entities with IDENTITY generated ids are still inserted one by one.
+     */
+    static void withJdbcBatchSize(Session session, int batchSize, Runnable action) {
+        Integer previous = session.getJdbcBatchSize();
+        session.setJdbcBatchSize(batchSize);
+        try {
+            action.run();
+        } finally {
+            session.setJdbcBatchSize(previous);
+        }
+    }
+
+    /**
+     * Reads the row count estimate of the entity table from the catalog statistics: {@code pg_class.reltuples} on
+     * PostgreSQL, {@code information_schema.tables.table_rows} on MySQL and MariaDB, and
+     * {@code information_schema.tables.row_count_estimate} on H2. Returns null on other dialects, or when the
+     * database has no statistics yet.
+     */
+    static Long estimateRowCount(Session session, Class<?> entityClass) {
+        SessionFactoryImplementor sessionFactory = session.getSessionFactory().unwrap(SessionFactoryImplementor.class);
+        EntityPersister persister = sessionFactory.getMappingMetamodel().getEntityDescriptor(entityClass);
+        if (!(persister instanceof AbstractEntityPersister)) {
+            return null;
+        }
+        String table = ((AbstractEntityPersister) persister).getTableName();
+        int dot = table.lastIndexOf('.');
+        String schema = dot < 0 ? null : table.substring(0, dot);
+        String name = table.substring(dot + 1);
+        Dialect dialect = sessionFactory.getJdbcServices().getDialect();
+        String sql;
+        if (dialect instanceof PostgreSQLDialect) {
+            sql = "select cast(reltuples as bigint) from pg_class where oid = to_regclass(:table)";
+            return single(nativeQuery(session, sql).setParameter("table", table).getResultList());
+        } else if (dialect instanceof MySQLDialect) {
+            sql = "select table_rows from information_schema.tables where table_schema = "
+                    + (schema == null ? "database()" : ":schema") + " and table_name = :table";
+        } else if (dialect instanceof H2Dialect) {
+            sql = "select row_count_estimate from information_schema.tables where upper(table_schema) = "
+                    + (schema == null ? "upper(schema())" : "upper(:schema)")
+                    + " and upper(table_name) = upper(:table)";
+        } else {
+            return null;
+        }
+        Query query = nativeQuery(session, sql).setParameter("table", name);
+        if (schema != null) {
+            query.setParameter("schema", schema);
+        }
+        return single(query.getResultList());
+    }
+
+    private static Query nativeQuery(EntityManager entityManager, String sql) {
+        return entityManager.createNativeQuery(sql);
+    }
+
+    private static Long single(List<?> results) {
+        if (results.isEmpty() || !(results.get(0) instanceof Number) || ((Number) results.get(0)).longValue() < 0) {
+            // PostgreSQL reports -1 for tables never analyzed.
+            return null;
+        }
+        return ((Number) results.get(0)).longValue();
+    }
+}
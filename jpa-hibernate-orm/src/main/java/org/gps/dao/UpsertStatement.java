@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.dao;
+
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.persister.entity.SingleTableEntityPersister;
+import org.hibernate.type.Type;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Native insert-or-update statement of an entity, keyed on its id columns and derived from the Hibernate mapping:
+ * {@code MERGE INTO ... KEY} on H2, {@code INSERT ... ON CONFLICT DO UPDATE} on PostgreSQL and
+ * {@code INSERT ... ON DUPLICATE KEY UPDATE} on MySQL and MariaDB.
+ */
+final class UpsertStatement {
+
+    private final AbstractEntityPersister persister;
+
+    private final String sql;
+
+    private final int[] properties;
+
+    private UpsertStatement(AbstractEntityPersister persister, String sql, int[] properties) {
+        this.persister = persister;
+        this.sql = sql;
+        this.properties = properties;
+    }
+
+    /**
+     * Builds the statement, or returns null if the dialect or the mapping is not supported: only entities mapped to
+     * a single table, without inheritance or a version, are.
+     */
+    static UpsertStatement of(EntityPersister entityPersister, Dialect dialect) {
+        if (!(entityPersister instanceof SingleTableEntityPersister)) {
+            return null;
+        }
+        AbstractEntityPersister persister = (AbstractEntityPersister) entityPersister;
+        if (persister.isInherited() || persister.isVersioned()
+                || persister.getEntityMetamodel().getSubclassEntityNames().size() > 1) {
+            return null;
+        }
+        String table = persister.getTableName();
+
+        List<String> keyColumns = Arrays.asList(persister.getIdentifierColumnNames());
+        List<String> columns = new ArrayList<>(keyColumns);
+        List<String> updateColumns = new ArrayList<>();
+        List<Integer> properties = new ArrayList<>();
+        Type[] types = persister.getPropertyTypes();
+        boolean[] insertable = persister.getPropertyInsertability();
+        boolean[] updatable = persister.getPropertyUpdateability();
+        for (int i = 0; i < types.length; i++) {
+            String[] propertyColumns = persister.getPropertyColumnNames(i);
+            if (!insertable[i] || types[i].isCollectionType() || propertyColumns.length == 0
+                    || Arrays.asList(propertyColumns).contains(null)) {
+                continue;
+            }
+            if (!table.equals(persister.getPropertyTableName(persister.getPropertyNames()[i]))) {
+                // Mapped to a secondary table.
+                return null;
+            }
+            properties.add(i);
+            columns.addAll(Arrays.asList(propertyColumns));
+            if (updatable[i]) {
+                updateColumns.addAll(Arrays.asList(propertyColumns));
+            }
+        }
+
+        String columnList = String.join(", ", columns);
+        String values = columns.stream().map(c -> "?").collect(Collectors.joining(", "));
+        String sql;
+        if (dialect instanceof H2Dialect) {
+            sql = String.format("merge into %s (%s) key (%s) values (%s)", table, columnList,
+                    String.join(", ", keyColumns), values);
+        } else if (dialect instanceof PostgreSQLDialect) {
+            sql = String.format("insert into %s (%s) values (%s) on conflict (%s) %s", table, columnList, values,
+                    String.join(", ", keyColumns), updateColumns.isEmpty()
+                            ? "do nothing"
+                            : "do update set " + assignments(updateColumns, "excluded.%s"));
+        } else if (dialect instanceof MySQLDialect) {
+            sql = String.format("insert into %s (%s) values (%s) on duplicate key update %s", table, columnList,
+                    values, updateColumns.isEmpty()
+                            ? assignments(keyColumns, "%s")
+                            : assignments(updateColumns, "values(%s)"));
+        } else {
+            return null;
+        }
+        return new UpsertStatement(persister, sql, properties.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private static String assignments(Collection<String> columns, String valueFormat) {
+        return columns.stream()
+                .map(c -> c + " = " + String.format(valueFormat, c))
+                .collect(Collectors.joining(", "));
+    }
+
+    String getSql() {
+        return sql;
+    }
+
+    /**
+     * Upserts the entities, which must all have an id, sending a JDBC batch every batchSize rows.
+     */
+    void execute(Connection connection, Collection<?> entities, SharedSessionContractImplementor session,
+                 int batchSize) throws SQLException {
+        Type identifierType = persister.getIdentifierType();
+        int identifierSpan = persister.getIdentifierColumnNames().length;
+        Type[] types = persister.getPropertyTypes();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            int pending = 0;
+            for (Object entity : entities) {
+                int index = 1;
+                identifierType.nullSafeSet(statement, persister.getIdentifier(entity, session), index, session);
+                index += identifierSpan;
+                Object[] values = persister.getPropertyValues(entity);
+                for (int property : properties) {
+                    types[property].nullSafeSet(statement, values[property], index, session);
+                    index += persister.getPropertyColumnNames(property).length;
+                }
+                statement.addBatch();
+                if (++pending == batchSize) {
+                    statement.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                statement.executeBatch();
+            }
+        }
+    }
+}
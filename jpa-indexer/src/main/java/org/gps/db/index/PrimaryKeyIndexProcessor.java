@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.db.index;
+
+import org.gps.db.scan.PrimaryKeyIndex;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Annotation processor that writes the {@link PrimaryKeyIndex} for the classes being compiled, so that
+ * {@link org.gps.db.scan.Scanner} does not have to walk the classpath at runtime.
+ * <p>
+ * Entries of an existing index for classes that are not part of the current compilation are kept, which keeps the
+ * index complete for incremental builds.
+ */
+@SupportedAnnotationTypes("org.gps.db.PrimaryKey")
+public class PrimaryKeyIndexProcessor extends AbstractProcessor {
+
+    private final Set<String> entries = new TreeSet<>();
+
+    private final Set<String> compiledTypes = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getRootElements()) {
+            collectTypes(element);
+        }
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.FIELD) {
+                    continue;
+                }
+                TypeElement owner = (TypeElement) element.getEnclosingElement();
+                entries.add(binaryName(owner) + '=' + element.getSimpleName());
+            }
+        }
+        if (roundEnv.processingOver()) {
+            writeIndex();
+        }
+        return false;
+    }
+
+    private void collectTypes(Element element) {
+        if (element instanceof TypeElement) {
+            compiledTypes.add(binaryName((TypeElement) element));
+            for (Element enclosed : element.getEnclosedElements()) {
+                collectTypes(enclosed);
+            }
+        }
+    }
+
+    private String binaryName(TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type).toString();
+    }
+
+    private void writeIndex() {
+        Set<String> merged = new TreeSet<>(entries);
+        merged.addAll(readExistingEntries());
+        if (merged.isEmpty()) {
+            return;
+        }
+        try {
+            FileObject resource = processingEnv.getFiler()
+                    .createResource(StandardLocation.CLASS_OUTPUT, "", PrimaryKeyIndex.INDEX_LOCATION);
+            try (Writer writer = resource.openWriter()) {
+                for (String entry : merged) {
+                    writer.write(entry);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Unable to write " + PrimaryKeyIndex.INDEX_LOCATION + ": " + e);
+        }
+    }
+
+    private Set<String> readExistingEntries() {
+        Set<String> existing = new TreeSet<>();
+        try {
+            FileObject resource = processingEnv.getFiler()
+                    .getResource(StandardLocation.CLASS_OUTPUT, "", PrimaryKeyIndex.INDEX_LOCATION);
+            try (Reader in = new InputStreamReader(resource.openInputStream(), StandardCharsets.UTF_8);
+                 BufferedReader reader = new BufferedReader(in)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int separator = line.indexOf('=');
+                    if (separator > 0 && !compiledTypes.contains(line.substring(0, separator))) {
+                        existing.add(line);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // No index from a previous build.
+        }
+        return existing;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.db.index;
+
+import org.gps.db.scan.PrimaryKeyIndex;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PrimaryKeyIndexProcessorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path sources;
+
+    private Path classes;
+
+    @Before
+    public void setUp() throws IOException {
+        sources = temporaryFolder.newFolder("sources").toPath();
+        classes = temporaryFolder.newFolder("classes").toPath();
+    }
+
+    @Test
+    public void testFullBuild() throws IOException {
+        compile(source("Planet", "@org.gps.db.PrimaryKey private String uuid;"),
+                source("Moon", "@org.gps.db.PrimaryKey private long id;"),
+                source("Star", "private long id;"));
+
+        Assert.assertEquals(Arrays.asList("sample.Moon=id", "sample.Planet=uuid"), readIndex());
+    }
+
+    @Test
+    public void testIncrementalBuild() throws IOException {
+        compile(source("Planet", "@org.gps.db.PrimaryKey private String uuid;"),
+                source("Moon", "@org.gps.db.PrimaryKey private long id;"),
+                source("Comet", "@org.gps.db.PrimaryKey private long id;"));
+
+        // Moon moved its key and Comet lost it: their old entries are dropped, Planet is not recompiled and kept.
+        compile(source("Moon", "@org.gps.db.PrimaryKey private long number;"),
+                source("Comet", "private long id;"));
+
+        Assert.assertEquals(Arrays.asList("sample.Moon=number", "sample.Planet=uuid"), readIndex());
+    }
+
+    private Path source(String className, String body) throws IOException {
+        Path file = sources.resolve(className + ".java");
+        Files.write(file, ("package sample; public class " + className + " { " + body + " }")
+                .getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private void compile(Path... files) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        List<String> arguments = new ArrayList<>(Arrays.asList(
+                "-proc:only",
+                "-processor", PrimaryKeyIndexProcessor.class.getName(),
+                "-classpath", System.getProperty("java.class.path"),
+                "-d", classes.toString()));
+        for (Path file : files) {
+            arguments.add(file.toString());
+        }
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        int status = compiler.run(null, null, errors, arguments.toArray(new String[0]));
+        Assert.assertEquals(errors.toString(StandardCharsets.UTF_8), 0, status);
+    }
+
+    private List<String> readIndex() throws IOException {
+        return Files.readAllLines(classes.resolve(PrimaryKeyIndex.INDEX_LOCATION), StandardCharsets.UTF_8);
+    }
+}
@@ -123,6 +123,9 @@ public class DatabaseConfig {
         properties.setProperty("hibernate.current_session_context_class", "org.springframework.orm.hibernate5.SpringSessionContext");
 
         properties.setProperty("hibernate.cache.use_second_level_cache", "false");
+        properties.setProperty("hibernate.jdbc.batch_size", "50");
+        properties.setProperty("hibernate.order_inserts", Boolean.TRUE.toString());
+        properties.setProperty("hibernate.order_updates", Boolean.TRUE.toString());
         return properties;
     }
 
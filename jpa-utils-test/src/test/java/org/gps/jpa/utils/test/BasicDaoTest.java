@@ -21,9 +21,31 @@
  */
 
 package org.gps.jpa.utils.test;import lombok.extern.slf4j.Slf4j;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
 import org.gps.db.Context;
+import org.gps.db.cache.CachingPrimaryKeyBasedDao;
+import org.gps.db.cache.ExistenceFilter;
+import org.gps.db.cache.ExistenceFilterConfig;
+import org.gps.db.cache.FieldEntitySerializer;
+import org.gps.db.cache.Invalidation;
+import org.gps.db.cache.LoopbackInvalidationBus;
+import org.gps.db.cache.OffHeapEntityCache;
+import org.gps.db.cache.TieredEntityCache;
+import org.gps.db.cache.TinyLfuCache;
+import org.gps.db.dao.AsyncPrimaryKeyBasedDao;
+import org.gps.db.dao.CountMode;
+import org.gps.db.dao.EntityChangeListener;
+import org.gps.db.dao.EntityChanges;
+import org.gps.db.dao.KeysetPage;
+import org.gps.db.dao.PartitionedScanConfig;
+import org.gps.db.dao.WriteBehindConfig;
+import org.gps.db.dao.WriteBehindQueue;
 import org.gps.jpa.utils.SampleApp;
+import org.gps.jpa.utils.dao.MoonDao;
 import org.gps.jpa.utils.dao.PersonDao;
+import org.gps.jpa.utils.entity.GeneratedEntity;
+import org.gps.jpa.utils.entity.Moon;
 import org.gps.jpa.utils.entity.Person;
 import org.junit.After;
 import org.junit.Assert;
@@ -33,8 +55,17 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @SpringBootTest(classes = SampleApp.class)
@@ -45,14 +76,26 @@ public class BasicDaoTest {
     @Autowired
     private PersonDao personDao;
 
+    @Autowired
+    private MoonDao moonDao;
+
     @Autowired
     private Context context;
 
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     @After
     public void tearDown() {
         for (Person person : personDao.findAll()) {
             personDao.delete(person);
         }
+        for (Moon moon : moonDao.findAll()) {
+            moonDao.delete(moon);
+        }
     }
 
     @Test
@@ -115,6 +158,478 @@ public class BasicDaoTest {
         Assert.assertEquals(100L, count);
     }
 
+    @Test
+    public void testForEach() {
+        for (int i = 0; i < 25; i++) {
+            Person person = new Person();
+            person.setName("streamed_" + i);
+            personDao.persist(person);
+        }
+
+        AtomicInteger count = new AtomicInteger();
+        personDao.forEach(10, person -> {
+            Assert.assertNotNull(person.getId());
+            count.incrementAndGet();
+        });
+        Assert.assertEquals(25, count.get());
+    }
+
+    @Test
+    public void testKeysetPagination() {
+        for (int i = 0; i < 25; i++) {
+            Person person = new Person();
+            person.setName("paged_" + i);
+            personDao.persist(person);
+        }
+
+        int pages = 0;
+        int total = 0;
+        Long lastId = null;
+        KeysetPage<Long, Person> page = personDao.findPageAfter(null, 10);
+        while (true) {
+            pages++;
+            for (Person person : page.getContent()) {
+                Assert.assertTrue(lastId == null || person.getId() > lastId);
+                lastId = person.getId();
+                total++;
+            }
+            if (!page.hasNext()) {
+                break;
+            }
+            Assert.assertEquals(lastId, page.getNextKey());
+            page = personDao.findPageAfter(page.getNextKey(), 10);
+        }
+        Assert.assertEquals(3, pages);
+        Assert.assertEquals(25, total);
+    }
+
+    @Test
+    public void testScanPartitioned() {
+        for (int i = 0; i < 50; i++) {
+            Person person = new Person();
+            person.setName("partitioned_" + i);
+            personDao.persist(person);
+        }
+
+        PartitionedScanConfig config = new PartitionedScanConfig();
+        config.setPartitions(4);
+        config.setParallelism(2);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        long count = personDao.scanPartitioned(config, person -> ids.add(person.getId()));
+        Assert.assertEquals(50L, count);
+        Assert.assertEquals(50, ids.size());
+    }
+
+    @Test
+    public void testNamedQueriesWarmUp() {
+        personDao.warmUp();
+
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            Long count = entityManager.createNamedQuery(Person.class.getName() + ".countTotal", Long.class)
+                    .getSingleResult();
+            Assert.assertEquals(personDao.countTotal(), count);
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    @Test
+    public void testFindByPrimaryKeys() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Person person = new Person();
+            person.setName("multi_" + i);
+            personDao.persist(person);
+            ids.add(person.getId());
+        }
+        List<Person> found = personDao.findByPrimaryKeys(Arrays.asList(ids.get(2), -1L, null, ids.get(0), ids.get(2)));
+        Assert.assertEquals(5, found.size());
+        Assert.assertEquals("multi_2", found.get(0).getName());
+        Assert.assertNull(found.get(1));
+        Assert.assertNull(found.get(2));
+        Assert.assertEquals("multi_0", found.get(3).getName());
+        Assert.assertEquals("multi_2", found.get(4).getName());
+    }
+
+    @Test
+    public void testBulkDelete() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Person person = new Person();
+            person.setName(i < 3 ? "bulk_keys_" + i : "bulk_where_" + i);
+            personDao.persist(person);
+            ids.add(person.getId());
+        }
+        Assert.assertEquals(2, personDao.deleteByPrimaryKeys(Arrays.asList(ids.get(0), ids.get(1), -1L)));
+        Assert.assertFalse(personDao.isExists(ids.get(0)));
+        Assert.assertTrue(personDao.isExists(ids.get(2)));
+
+        Assert.assertEquals(3, personDao.deleteWhere((cb, root) -> cb.like(root.get("name"), "bulk_where_%")));
+        Assert.assertEquals(Arrays.asList(null, null, null, null, null),
+                personDao.findByPrimaryKeys(Arrays.asList(ids.get(0), ids.get(1), ids.get(3), ids.get(4), ids.get(5))));
+        Assert.assertNotNull(personDao.findByPrimaryKey(ids.get(2)));
+    }
+
+    @Test
+    public void testCountModes() {
+        List<EntityChanges> committed = new ArrayList<>();
+        EntityChangeListener listener = committed::add;
+        personDao.addChangeListener(listener);
+        try {
+            long count = personDao.countTotal(CountMode.CACHED);
+            Assert.assertEquals(count, personDao.countTotal(CountMode.EXACT).longValue());
+
+            Person person = new Person();
+            person.setName("counted");
+            personDao.persist(person);
+            Assert.assertEquals(count + 1, personDao.countTotal(CountMode.CACHED).longValue());
+            Assert.assertEquals(1, committed.size());
+            Assert.assertTrue(committed.get(0).getInserted().contains(person.getId()));
+
+            person.setName("merged");
+            personDao.persist(person);
+            Assert.assertFalse(committed.get(1).isRowCountKnown());
+            Assert.assertEquals(count + 1, personDao.countTotal(CountMode.CACHED).longValue());
+
+            personDao.delete(person);
+            Assert.assertEquals(count, personDao.countTotal(CountMode.CACHED).longValue());
+            Assert.assertEquals(count, personDao.countTotal(CountMode.ESTIMATED).longValue());
+            Assert.assertTrue(committed.get(2).getDeleted().contains(person.getId()));
+        } finally {
+            personDao.removeChangeListener(listener);
+        }
+    }
+
+    @Test
+    public void testResultCache() {
+        personDao.setResultCacheEnabled(true);
+        try {
+            List<Person> all = personDao.findAll();
+            // Written without the Dao: the cached result is still served.
+            EntityManager entityManager = entityManagerFactory.createEntityManager();
+            try {
+                entityManager.getTransaction().begin();
+                Person unseen = new Person();
+                unseen.setName("unseen");
+                entityManager.persist(unseen);
+                entityManager.getTransaction().commit();
+            } finally {
+                entityManager.close();
+            }
+            Assert.assertEquals(all.size(), personDao.findAll().size());
+
+            Person person = new Person();
+            person.setName("cached_result");
+            personDao.persist(person);
+            List<Person> updated = personDao.findAll();
+            Assert.assertEquals(all.size() + 2, updated.size());
+            Assert.assertEquals(updated.size(), personDao.findAll().size());
+        } finally {
+            personDao.setResultCacheEnabled(false);
+        }
+    }
+
+    @Test
+    public void testResultCacheCopies() {
+        Person person = new Person();
+        person.setName("cached_copy");
+        personDao.persist(person);
+        personDao.setResultCacheEnabled(true);
+        try {
+            personDao.findAll();
+            Person modified = personDao.findAll().get(0);
+            modified.setName("modified");
+            Person cached = personDao.findAll().get(0);
+            Assert.assertNotSame(modified, cached);
+            Assert.assertEquals("cached_copy", cached.getName());
+        } finally {
+            personDao.setResultCacheEnabled(false);
+        }
+    }
+
+    @Test
+    public void testInvalidationBus() {
+        List<Invalidation> published = new ArrayList<>();
+        try (LoopbackInvalidationBus bus = new LoopbackInvalidationBus();
+             CachingPrimaryKeyBasedDao<Long, Person> cachingDao =
+                     new CachingPrimaryKeyBasedDao<>(personDao, new TinyLfuCache<>(100))) {
+            bus.subscribe(published::add);
+            personDao.setInvalidationBus(bus);
+
+            Person person = new Person();
+            person.setName("invalidated");
+            personDao.persist(person);
+            person.setName("invalidated_again");
+            personDao.persist(person);
+            Assert.assertEquals(2, published.size());
+            Assert.assertEquals(Person.class.getName(), published.get(1).getEntityClassName());
+            Assert.assertEquals(Set.of(person.getId()), published.get(1).getPrimaryKeys());
+
+            // Another node wrote the row: the cached copy is evicted and the data version moves on.
+            Assert.assertNotNull(cachingDao.findByPrimaryKey(person.getId()));
+            Assert.assertEquals(1, cachingDao.getCache().size());
+            long version = personDao.getContext().getVersion(Person.class);
+            bus.publish(new Invalidation("other-node", Person.class.getName(), Set.of(person.getId())));
+            Assert.assertEquals(0, cachingDao.getCache().size());
+            Assert.assertTrue(personDao.getContext().getVersion(Person.class) > version);
+        } finally {
+            personDao.setInvalidationBus(null);
+        }
+    }
+
+    @Test
+    public void testExistsAll() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Person person = new Person();
+            person.setName("exists_" + i);
+            personDao.persist(person);
+            ids.add(person.getId());
+        }
+        List<Long> probe = Arrays.asList(-1L, ids.get(3), ids.get(0), -2L, ids.get(4), ids.get(1), ids.get(2));
+        int inClauseLimit = personDao.getInClauseLimit();
+        Set<Long> existing;
+        try {
+            personDao.setInClauseLimit(2);
+            existing = personDao.existsAll(probe);
+        } finally {
+            personDao.setInClauseLimit(inClauseLimit);
+        }
+        Assert.assertEquals(Arrays.asList(ids.get(3), ids.get(0), ids.get(4), ids.get(1), ids.get(2)),
+                new ArrayList<>(existing));
+        Assert.assertTrue(personDao.isExists(ids.get(0)));
+    }
+
+    @Test
+    public void testIsDetached() {
+        Person person = new Person();
+        person.setName("Jack Ryan");
+        Assert.assertFalse(personDao.isDetached(person));
+
+        personDao.persist(person);
+        Assert.assertTrue(personDao.isDetached(person));
+
+        person.setName("Jack Ryan Jr.");
+        personDao.persist(person);
+        Assert.assertEquals("Jack Ryan Jr.", personDao.findByPrimaryKey(person.getId()).getName());
+
+        personDao.delete(person);
+        personDao.delete(person);
+        Assert.assertFalse(personDao.isExists(person.getId()));
+    }
+
+    @Test
+    public void testBatchPersist() {
+        List<Person> people = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            Person person = new Person();
+            person.setName("batch_" + i);
+            people.add(person);
+        }
+        long count = personDao.countTotal();
+        personDao.persist(people);
+        Assert.assertEquals(count + people.size(), personDao.countTotal().longValue());
+
+        for (Person person : people) {
+            Assert.assertNotNull(person.getId());
+            person.setName(person.getName() + "_updated");
+        }
+        personDao.persist(people);
+        Assert.assertEquals(count + people.size(), personDao.countTotal().longValue());
+        Assert.assertEquals("batch_7_updated", personDao.findByPrimaryKey(people.get(7).getId()).getName());
+    }
+
+    @Test
+    public void testBatchPersistManagedEntities() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Person person = new Person();
+            person.setName("managed_" + i);
+            personDao.persist(person);
+            ids.add(person.getId());
+        }
+        long count = personDao.countTotal();
+        int batchSize = personDao.getBatchSize();
+        personDao.setBatchSize(2);
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                List<Person> mixed = new ArrayList<>();
+                for (Long id : ids) {
+                    Person added = new Person();
+                    added.setName("added");
+                    mixed.add(added);
+                    // Managed when the call starts, detached by the batch clears before it is reached.
+                    Person managed = personDao.findByPrimaryKey(id);
+                    managed.setName(managed.getName() + "_updated");
+                    mixed.add(managed);
+                }
+                personDao.persist(mixed);
+            });
+        } finally {
+            personDao.setBatchSize(batchSize);
+        }
+        Assert.assertEquals(count + ids.size(), personDao.countTotal().longValue());
+        Assert.assertEquals("managed_4_updated", personDao.findByPrimaryKey(ids.get(4)).getName());
+    }
+
+    @Test
+    public void testBatchPersistDuplicateKeys() {
+        Person person = new Person();
+        person.setName("duplicate");
+        personDao.persist(person);
+        long count = personDao.countTotal();
+
+        List<Person> duplicates = new ArrayList<>();
+        for (String name : Arrays.asList("duplicate_first", "duplicate_second")) {
+            Person copy = new Person();
+            copy.setId(person.getId());
+            copy.setName(name);
+            duplicates.add(copy);
+        }
+        personDao.persist(duplicates);
+        Assert.assertEquals(count, personDao.countTotal().longValue());
+        Assert.assertEquals("duplicate_second", personDao.findByPrimaryKey(person.getId()).getName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBatchSize() {
+        personDao.setBatchSize(0);
+    }
+
+    @Test
+    public void testAsyncDao() throws Exception {
+        long count = personDao.countTotal();
+        try (AsyncPrimaryKeyBasedDao<Long, Person> asyncDao = new AsyncPrimaryKeyBasedDao<>(personDao, 2)) {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            List<Person> people = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                Person person = new Person();
+                person.setName("async_" + i);
+                people.add(person);
+                futures.add(asyncDao.persist(person));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+
+            Person retrieved = asyncDao.findByPrimaryKey(people.get(3).getId()).get();
+            Assert.assertEquals("async_3", retrieved.getName());
+            Assert.assertEquals(count + 10, asyncDao.countTotal().get().longValue());
+            Assert.assertEquals(2, asyncDao.getAvailablePermits());
+        }
+    }
+
+    @Test
+    public void testWriteBehind() throws Exception {
+        Person person = new Person();
+        person.setName("write_behind");
+        personDao.persist(person);
+
+        WriteBehindQueue<Long, Person> queue = new WriteBehindQueue<>(personDao, new WriteBehindConfig());
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < 10; i++) {
+                Person update = new Person();
+                update.setId(person.getId());
+                update.setName("write_behind_" + i);
+                futures.add(queue.persist(update));
+            }
+            Person added = new Person();
+            added.setName("write_behind_added");
+            futures.add(queue.persist(added));
+        } finally {
+            queue.close();
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+
+        Assert.assertEquals(9, queue.getCoalescedCount());
+        Assert.assertEquals(2, queue.getWrittenCount());
+        Assert.assertEquals("write_behind_9", personDao.findByPrimaryKey(person.getId()).getName());
+    }
+
+    @Test
+    public void testCachingDao() {
+        try (CachingPrimaryKeyBasedDao<Long, Person> cachingDao =
+                     new CachingPrimaryKeyBasedDao<>(personDao, new TinyLfuCache<>(100))) {
+            Person person = new Person();
+            person.setName("cached");
+            cachingDao.persist(person);
+
+            Assert.assertEquals("cached", cachingDao.findByPrimaryKey(person.getId()).getName());
+            Assert.assertEquals("cached", cachingDao.findByPrimaryKey(person.getId()).getName());
+            Assert.assertEquals(1, cachingDao.getCache().getHitCount());
+            Assert.assertEquals(1, cachingDao.getCache().getMissCount());
+
+            // Callers get copies, their changes do not reach the cache.
+            Person copy = cachingDao.findByPrimaryKey(person.getId());
+            copy.setName("not_saved");
+            Assert.assertNotSame(copy, cachingDao.findByPrimaryKey(person.getId()));
+            Assert.assertEquals("cached", cachingDao.findByPrimaryKey(person.getId()).getName());
+
+            person.setName("cached_updated");
+            personDao.persist(person);
+            Assert.assertEquals(0, cachingDao.getCache().size());
+            Assert.assertEquals("cached_updated", cachingDao.findByPrimaryKey(person.getId()).getName());
+
+            cachingDao.delete(person);
+            Assert.assertNull(cachingDao.findByPrimaryKey(person.getId()));
+        }
+    }
+
+    @Test
+    public void testOffHeapCache() {
+        OffHeapEntityCache<Long, Person> offHeap =
+                new OffHeapEntityCache<>(1024 * 1024, 256, new FieldEntitySerializer<>(Person.class));
+        try (CachingPrimaryKeyBasedDao<Long, Person> cachingDao = new CachingPrimaryKeyBasedDao<>(personDao,
+                new TieredEntityCache<>(new TinyLfuCache<>(1), offHeap))) {
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                Person person = new Person();
+                person.setName("off_heap_" + i);
+                personDao.persist(person);
+                ids.add(person.getId());
+                cachingDao.findByPrimaryKey(person.getId());
+            }
+            Assert.assertEquals(3, offHeap.size());
+
+            Person first = offHeap.get(ids.get(0));
+            Assert.assertEquals("off_heap_0", first.getName());
+            Assert.assertNotSame(first, offHeap.get(ids.get(0)));
+            Assert.assertEquals("off_heap_1", cachingDao.findByPrimaryKey(ids.get(1)).getName());
+        }
+    }
+
+    @Test
+    public void testExistenceFilter() {
+        Person existing = new Person();
+        existing.setName("filtered");
+        personDao.persist(existing);
+        try {
+            personDao.enableExistenceFilter(new ExistenceFilterConfig());
+            ExistenceFilter filter = personDao.getExistenceFilter();
+            Assert.assertTrue(personDao.isExists(existing.getId()));
+
+            long definiteMisses = filter.getDefiniteMissCount();
+            for (long id = -1; id > -100; id--) {
+                Assert.assertFalse(personDao.isExists(id));
+            }
+            Assert.assertTrue(filter.getDefiniteMissCount() > definiteMisses);
+
+            Person added = new Person();
+            added.setName("filtered_added");
+            personDao.persist(added);
+            Assert.assertTrue(personDao.isExists(added.getId()));
+            Assert.assertEquals(1, personDao.existsAll(Arrays.asList(-1L, added.getId())).size());
+
+            // A rebuild in progress is claimed once and hides the staleness of the filter.
+            Assert.assertTrue(filter.tryStartRebuild());
+            Assert.assertFalse(filter.tryStartRebuild());
+            Assert.assertFalse(filter.isStale());
+            filter.finishRebuild();
+        } finally {
+            personDao.disableExistenceFilter();
+        }
+    }
+
     @Test
     public void testContext() {
         Assert.assertNotNull(context.getCache());
@@ -123,4 +638,63 @@ public class BasicDaoTest {
             log.info("{} --> {}", key, field);
         }
     }
+
+    @Test
+    public void testMappedSuperclassPrimaryKey() {
+        Assert.assertEquals(GeneratedEntity.class, context.getPrimaryKeyField(Moon.class).getDeclaringClass());
+
+        Moon moon = new Moon();
+        moon.setId(3L);
+        Object value = context.getPrimaryKeyValue(moon);
+        Assert.assertEquals(3L, value);
+    }
+
+    @Test
+    public void testPersistPrimitiveGeneratedId() {
+        long count = moonDao.countTotal();
+        Moon moon = new Moon();
+        moon.setName("Europa");
+        Assert.assertFalse(moonDao.isDetached(moon));
+        moonDao.persist(moon);
+        Assert.assertNotEquals(0L, moon.getId());
+        Assert.assertEquals(count + 1, moonDao.countTotal().longValue());
+
+        moon.setName("Io");
+        Assert.assertTrue(moonDao.isDetached(moon));
+        moonDao.persist(moon);
+        Assert.assertEquals(count + 1, moonDao.countTotal().longValue());
+        Assert.assertEquals("Io", moonDao.findByPrimaryKey(moon.getId()).getName());
+    }
+
+    @Test
+    public void testProxyPrimaryKey() {
+        Person person = new Person();
+        person.setName("proxied");
+        personDao.persist(person);
+
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            Person reference = entityManager.getReference(Person.class, person.getId());
+            Assert.assertNotSame(Person.class, reference.getClass());
+            Object value = context.getPrimaryKeyValue(reference);
+            Assert.assertEquals(person.getId(), value);
+            Assert.assertFalse(entityManagerFactory.getPersistenceUnitUtil().isLoaded(reference));
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    @Test
+    public void testLazyContext() {
+        Context lazyContext = new Context(entityManagerFactory);
+        Assert.assertTrue(lazyContext.getCache().isEmpty());
+
+        Assert.assertEquals(context.getPrimaryKeyField(Person.class), lazyContext.getPrimaryKeyField(Person.class));
+        Assert.assertEquals(1, lazyContext.getCache().size());
+
+        Person person = new Person();
+        person.setId(7L);
+        Object value = lazyContext.getPrimaryKeyValue(person);
+        Assert.assertEquals(7L, value);
+    }
 }
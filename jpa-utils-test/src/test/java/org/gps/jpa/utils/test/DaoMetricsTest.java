@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2024, Paul Gundarapu.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.gps.jpa.utils.test;
+
+import org.gps.db.dao.CountMode;
+import org.gps.db.metrics.DaoMetrics;
+import org.gps.db.metrics.DaoMetricsPostProcessor;
+import org.gps.db.metrics.OperationMetrics;
+import org.gps.jpa.utils.SampleApp;
+import org.gps.jpa.utils.dao.PersonDao;
+import org.gps.jpa.utils.entity.Person;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import java.util.List;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringBootTest(classes = SampleApp.class)
+@TestPropertySource(locations="classpath:application-test.properties")
+@Import(DaoMetricsTest.MetricsConfiguration.class)
+public class DaoMetricsTest {
+
+    @TestConfiguration
+    static class MetricsConfiguration {
+
+        @Bean
+        public static DaoMetrics daoMetrics() {
+            return new DaoMetrics();
+        }
+
+        @Bean
+        public static DaoMetricsPostProcessor daoMetricsPostProcessor(DaoMetrics daoMetrics) {
+            return new DaoMetricsPostProcessor(daoMetrics);
+        }
+    }
+
+    @Autowired
+    private PersonDao personDao;
+
+    @Autowired
+    private DaoMetrics daoMetrics;
+
+    @After
+    public void tearDown() {
+        for (Person person : personDao.findAll()) {
+            personDao.delete(person);
+        }
+    }
+
+    @Test
+    public void testDaoMetrics() throws Exception {
+        OperationMetrics findAll = daoMetrics.getOperation(Person.class, "findAll");
+        OperationMetrics persist = daoMetrics.getOperation(Person.class, "persist");
+        long calls = findAll.getCalls();
+        long persisted = persist.getRows();
+
+        Person person = new Person();
+        person.setName("measured");
+        personDao.persist(person);
+        int size = personDao.findAll().size();
+        Assert.assertEquals(calls + 1, findAll.getCalls());
+        Assert.assertTrue(findAll.getRows() >= size);
+        Assert.assertEquals(persisted + 1, persist.getRows());
+        Assert.assertTrue(findAll.percentileNanos(0.99) > 0);
+
+        // Overloads are recorded apart.
+        OperationMetrics persistAll = daoMetrics.getOperation(Person.class, "persistAll");
+        OperationMetrics countTotal = daoMetrics.getOperation(Person.class, "countTotal");
+        OperationMetrics estimated = daoMetrics.getOperation(Person.class, "countTotal.ESTIMATED");
+        long batchRows = persistAll.getRows();
+        long countCalls = countTotal.getCalls();
+        long estimatedCalls = estimated.getCalls();
+        Person other = new Person();
+        other.setName("measured_batch");
+        personDao.persist(List.of(other));
+        personDao.countTotal(CountMode.ESTIMATED);
+        Assert.assertEquals(batchRows + 1, persistAll.getRows());
+        Assert.assertEquals(persisted + 1, persist.getRows());
+        Assert.assertEquals(estimatedCalls + 1, estimated.getCalls());
+        Assert.assertEquals(countCalls, countTotal.getCalls());
+
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        daoMetrics.registerMBeans(server);
+        try {
+            Assert.assertEquals(findAll.getCalls(), server.getAttribute(DaoMetrics.objectName(findAll), "Calls"));
+        } finally {
+            daoMetrics.unregisterMBeans();
+        }
+    }
+}
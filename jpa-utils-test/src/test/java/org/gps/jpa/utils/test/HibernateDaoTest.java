@@ -21,8 +21,12 @@
  */
 
 package org.gps.jpa.utils.test;import lombok.extern.slf4j.Slf4j;
+import org.gps.db.dao.CountMode;
+import org.gps.db.dao.PartitionedScanConfig;
 import org.gps.jpa.utils.SampleApp;
+import org.gps.jpa.utils.dao.HibernateMoonDao;
 import org.gps.jpa.utils.dao.PlanetDao;
+import org.gps.jpa.utils.entity.Moon;
 import org.gps.jpa.utils.entity.Planet;
 import org.hibernate.Session;
 import org.junit.After;
@@ -35,6 +39,13 @@ import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
 @RunWith(SpringJUnit4ClassRunner.class)
 @SpringBootTest(classes = SampleApp.class)
 @TestPropertySource(locations="classpath:application-test.properties")
@@ -44,11 +55,17 @@ public class HibernateDaoTest {
     @Autowired
     private PlanetDao planetDao;
 
+    @Autowired
+    private HibernateMoonDao moonDao;
+
     @After
     public void tearDown() {
         for (Planet planet : planetDao.findAll()) {
             planetDao.delete(planet);
         }
+        for (Moon moon : moonDao.findAll()) {
+            moonDao.delete(moon);
+        }
     }
 
     @Test
@@ -70,4 +87,101 @@ public class HibernateDaoTest {
         Assert.assertEquals(planet.getName(), retrieved.getName());
         Assert.assertEquals(planet.getDistanceFromEarth(), retrieved.getDistanceFromEarth(), 0.0);
     }
+
+    @Test
+    public void testFindByPrimaryKeys() {
+        List<String> uids = new ArrayList<>();
+        for (String name : Arrays.asList("Saturn", "Uranus")) {
+            Planet planet = new Planet();
+            planet.setName(name);
+            planetDao.persist(planet);
+            uids.add(planet.getUid());
+        }
+        List<Planet> found = planetDao.findByPrimaryKeys(Arrays.asList(uids.get(1), null, "missing", uids.get(0)));
+        Assert.assertEquals(4, found.size());
+        Assert.assertEquals("Uranus", found.get(0).getName());
+        Assert.assertNull(found.get(1));
+        Assert.assertNull(found.get(2));
+        Assert.assertEquals("Saturn", found.get(3).getName());
+    }
+
+    @Test
+    public void testEstimatedCount() {
+        Planet planet = new Planet();
+        planet.setName("Neptune");
+        planetDao.persist(planet);
+
+        Long estimate = planetDao.countTotal(CountMode.ESTIMATED);
+        Assert.assertNotNull(estimate);
+        Assert.assertTrue(estimate >= 0);
+    }
+
+    @Test
+    public void testUpsertAll() {
+        Planet mars = new Planet();
+        mars.setName("Mars");
+        mars.setDistanceFromEarth(225 * Math.pow(10, 6));
+        planetDao.persist(mars);
+
+        List<Planet> planets = new ArrayList<>();
+        Planet updated = new Planet();
+        updated.setUid(mars.getUid());
+        updated.setName("Mars (updated)");
+        updated.setDistanceFromEarth(mars.getDistanceFromEarth());
+        planets.add(updated);
+        Planet inserted = new Planet();
+        inserted.setUid(UUID.randomUUID().toString());
+        inserted.setName("Venus");
+        planets.add(inserted);
+        Planet generated = new Planet();
+        generated.setName("Mercury");
+        planets.add(generated);
+
+        planetDao.upsertAll(planets);
+
+        Assert.assertEquals(3L, planetDao.countTotal().longValue());
+        Assert.assertEquals("Mars (updated)", planetDao.findByPrimaryKey(mars.getUid()).getName());
+        Assert.assertEquals("Venus", planetDao.findByPrimaryKey(inserted.getUid()).getName());
+        Assert.assertNotNull(generated.getUid());
+    }
+
+    @Test
+    public void testUpsertAllPrimitiveGeneratedId() {
+        Moon io = new Moon();
+        io.setName("Io");
+        moonDao.persist(io);
+
+        Moon updated = new Moon();
+        updated.setId(io.getId());
+        updated.setName("Io (updated)");
+        Moon europa = new Moon();
+        europa.setName("Europa");
+        Moon ganymede = new Moon();
+        ganymede.setName("Ganymede");
+
+        // The 0 ids of the new moons are unsaved values: they are inserted, not upserted into row 0.
+        moonDao.upsertAll(Arrays.asList(updated, europa, ganymede));
+
+        Assert.assertEquals(3L, moonDao.countTotal().longValue());
+        Assert.assertEquals("Io (updated)", moonDao.findByPrimaryKey(io.getId()).getName());
+        Assert.assertNotEquals(0L, europa.getId());
+        Assert.assertNotEquals(europa.getId(), ganymede.getId());
+        Assert.assertEquals("Ganymede", moonDao.findByPrimaryKey(ganymede.getId()).getName());
+    }
+
+    @Test
+    public void testScanPartitionedStringKeys() {
+        for (int i = 0; i < 30; i++) {
+            Planet planet = new Planet();
+            planet.setName("planet_" + i);
+            planetDao.persist(planet);
+        }
+
+        PartitionedScanConfig config = new PartitionedScanConfig();
+        config.setPartitions(3);
+        Set<String> uids = ConcurrentHashMap.newKeySet();
+        long count = planetDao.scanPartitioned(config, planet -> uids.add(planet.getUid()));
+        Assert.assertEquals(30L, count);
+        Assert.assertEquals(30, uids.size());
+    }
 }